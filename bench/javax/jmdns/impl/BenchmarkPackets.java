@@ -0,0 +1,164 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jmdns.impl.DNSRecord.Pointer;
+import javax.jmdns.impl.DNSRecord.Service;
+import javax.jmdns.impl.DNSRecord.Text;
+
+/**
+ * The packets used by the benchmarks.
+ * <p/>
+ * Captured packets are read from the directory named by the system property
+ * <code>jmdns.bench.packets</code>, one raw UDP payload per file. Without
+ * captures, the benchmarks use packets shaped like the ones a Bonjour
+ * responder sends: announcements of a few services, each with a PTR, SRV,
+ * TXT and address record, and queries carrying known answers.
+ */
+final class BenchmarkPackets
+{
+    final static String DOMAIN = "local.";
+    final static String[] TYPES = {"_http._tcp.local.", "_ipp._tcp.local.", "_airplay._tcp.local.", "_raop._tcp.local.", "_workstation._tcp.local."};
+
+    private BenchmarkPackets()
+    {
+    }
+
+    /**
+     * Returns the captured packets, or null if there are none.
+     */
+    static byte[][] captured() throws IOException
+    {
+        final String dir = System.getProperty("jmdns.bench.packets");
+        if (dir == null)
+        {
+            return null;
+        }
+        final File[] files = new File(dir).listFiles();
+        if (files == null || files.length == 0)
+        {
+            return null;
+        }
+        Arrays.sort(files);
+        final List packets = new ArrayList();
+        for (int i = 0; i < files.length; i++)
+        {
+            if (files[i].isFile())
+            {
+                packets.add(read(files[i]));
+            }
+        }
+        return (byte[][]) packets.toArray(new byte[packets.size()][]);
+    }
+
+    /**
+     * Returns the records announcing a number of services of the host
+     * "host-n.local.".
+     */
+    static List announcement(int host, int services, int ttl) throws IOException
+    {
+        final String server = "host-" + host + "." + DOMAIN;
+        final List records = new ArrayList();
+        for (int i = 0; i < services; i++)
+        {
+            final String type = TYPES[i % TYPES.length];
+            final String name = "Service " + host + "-" + i + "." + type;
+            records.add(new Pointer(type, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, ttl, name));
+            records.add(new Service(name, DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN, ttl, 0, 0, 8000 + i, server));
+            records.add(new Text(name, DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN, ttl, text(i)));
+        }
+        records.add(new DNSRecord.Address(server, DNSConstants.TYPE_A, DNSConstants.CLASS_IN, ttl, InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, (byte) (host >> 8), (byte) host})));
+        return records;
+    }
+
+    /**
+     * Returns the TXT data of a service, in the style of a printer or an
+     * AirPlay receiver.
+     */
+    static byte[] text(int i) throws IOException
+    {
+        final String[] pairs = {"txtvers=1", "qtotal=1", "rp=printers/queue" + i, "ty=Example Printer Model " + i, "adminurl=http://host.local.:631/printers/queue" + i, "note=Second floor", "product=(Example Printer)", "pdl=application/pdf,image/urf", "Color=T", "Duplex=T", "UUID=6ba7b810-9dad-11d1-80b4-00c04fd430c8"};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        for (int j = 0; j < pairs.length; j++)
+        {
+            final byte[] data = pairs[j].getBytes("UTF-8");
+            out.write(data.length);
+            out.write(data, 0, data.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a response carrying records.
+     */
+    static byte[] response(List records) throws IOException
+    {
+        final DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
+        for (int i = 0, n = records.size(); i < n; i++)
+        {
+            out.addAnswer((DNSRecord) records.get(i), 0);
+        }
+        return bytes(out);
+    }
+
+    /**
+     * Encodes a query for the PTR records of the service types, with the
+     * given known answers.
+     */
+    static byte[] query(List knownAnswers) throws IOException
+    {
+        final DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
+        for (int i = 0; i < TYPES.length; i++)
+        {
+            out.addQuestion(new DNSQuestion(TYPES[i], DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN));
+        }
+        for (int i = 0, n = knownAnswers.size(); i < n; i++)
+        {
+            final DNSRecord rec = (DNSRecord) knownAnswers.get(i);
+            if (rec.type == DNSConstants.TYPE_PTR)
+            {
+                out.addAnswer(rec, 0);
+            }
+        }
+        return bytes(out);
+    }
+
+    static byte[] bytes(DNSOutgoing out) throws IOException
+    {
+        out.finish();
+        final byte[] data = new byte[out.off];
+        System.arraycopy(out.data, 0, data, 0, out.off);
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        final InputStream in = new FileInputStream(file);
+        try
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(DNSConstants.MAX_MSG_ABSOLUTE);
+            final byte[] buffer = new byte[DNSConstants.MAX_MSG_ABSOLUTE];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
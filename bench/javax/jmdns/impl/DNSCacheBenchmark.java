@@ -0,0 +1,141 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * DNSCache lookups and updates, alone and while other threads use the same
+ * cache, the way the packet pipeline, the tasks and the API threads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DNSCacheBenchmark
+{
+    /**
+     * Number of hosts whose services are cached.
+     */
+    @Param({"10", "200"})
+    public int hosts;
+
+    private DNSCache cache;
+    private DNSRecord[] cached;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        cache = new DNSCache(100);
+        final List all = new ArrayList();
+        for (int i = 0; i < hosts; i++)
+        {
+            all.addAll(BenchmarkPackets.announcement(i, 4, DNSConstants.DNS_TTL));
+        }
+        cached = (DNSRecord[]) all.toArray(new DNSRecord[all.size()]);
+        for (int i = 0; i < cached.length; i++)
+        {
+            cache.add(cached[i]);
+        }
+    }
+
+    /**
+     * The records a thread adds and removes again.
+     */
+    @State(Scope.Thread)
+    public static class Updates
+    {
+        private static int nextHost = 100000;
+
+        DNSRecord[] records;
+        int next;
+
+        @Setup
+        public void setUp() throws IOException
+        {
+            final int host;
+            synchronized (Updates.class)
+            {
+                host = nextHost++;
+            }
+            final List list = BenchmarkPackets.announcement(host, 4, DNSConstants.DNS_TTL);
+            records = (DNSRecord[]) list.toArray(new DNSRecord[list.size()]);
+        }
+    }
+
+    /**
+     * The position of a reading thread in the cached records.
+     */
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        int next;
+    }
+
+    private DNSEntry lookup(Cursor cursor)
+    {
+        final DNSRecord rec = cached[cursor.next];
+        cursor.next = (cursor.next + 1) % cached.length;
+        return cache.get(rec.getName(), rec.type, rec.clazz);
+    }
+
+    private boolean update(Updates updates)
+    {
+        final DNSRecord rec = updates.records[updates.next];
+        updates.next = (updates.next + 1) % updates.records.length;
+        cache.add(rec);
+        return cache.remove(rec);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DNSEntry get(Cursor cursor)
+    {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public DNSEntry getContended(Cursor cursor)
+    {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addRemoveContended(Updates updates)
+    {
+        return update(updates);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public DNSEntry mixedGet(Cursor cursor)
+    {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean mixedAddRemove(Updates updates)
+    {
+        return update(updates);
+    }
+}
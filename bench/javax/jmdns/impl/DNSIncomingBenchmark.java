@@ -0,0 +1,100 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of received packets by DNSIncoming.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DNSIncomingBenchmark
+{
+    /**
+     * Number of services announced in a synthesized packet.
+     */
+    @Param({"1", "4"})
+    public int services;
+
+    private ByteBuffer[] packets;
+    private InetAddress source;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        byte[][] data = BenchmarkPackets.captured();
+        if (data == null)
+        {
+            data = new byte[][]{
+                BenchmarkPackets.response(BenchmarkPackets.announcement(1, services, DNSConstants.DNS_TTL)),
+                BenchmarkPackets.query(BenchmarkPackets.announcement(2, services, DNSConstants.DNS_TTL))};
+        }
+        packets = new ByteBuffer[data.length];
+        for (int i = 0; i < data.length; i++)
+        {
+            packets[i] = ByteBuffer.wrap(data[i]);
+        }
+        source = InetAddress.getByName("192.168.0.1");
+    }
+
+    private ByteBuffer nextPacket()
+    {
+        final ByteBuffer packet = packets[next];
+        next = (next + 1) % packets.length;
+        return packet;
+    }
+
+    /**
+     * Parses the header and questions, and indexes the records.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException
+    {
+        final DNSIncoming in = new DNSIncoming(nextPacket(), source, DNSConstants.MDNS_PORT);
+        blackhole.consume(in.getNumberOfRecords());
+    }
+
+    /**
+     * Parses a packet and reads the name and type of every record, the way
+     * JmDNSImpl.handleResponse does for records which are already cached.
+     */
+    @Benchmark
+    public void parseAndView(Blackhole blackhole) throws IOException
+    {
+        final DNSIncoming in = new DNSIncoming(nextPacket(), source, DNSConstants.MDNS_PORT);
+        final DNSIncoming.RecordView view = in.getRecordView();
+        for (int i = 0, n = in.getNumberOfRecords(); i < n; i++)
+        {
+            view.moveTo(i);
+            blackhole.consume(view.getName());
+            blackhole.consume(view.getType());
+        }
+    }
+
+    /**
+     * Parses a packet and creates a DNSRecord for every record.
+     */
+    @Benchmark
+    public void parseAndMaterialize(Blackhole blackhole) throws IOException
+    {
+        final DNSIncoming in = new DNSIncoming(nextPacket(), source, DNSConstants.MDNS_PORT);
+        blackhole.consume(in.getAnswers());
+    }
+}
@@ -0,0 +1,78 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building of messages by DNSOutgoing, with and without domain name
+ * compression, and with new or pooled messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DNSOutgoingBenchmark
+{
+    /**
+     * Number of services announced in a message.
+     */
+    @Param({"1", "4"})
+    public int services;
+
+    @Param({"true", "false"})
+    public boolean compression;
+
+    private DNSRecord[] records;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        final List list = BenchmarkPackets.announcement(1, services, DNSConstants.DNS_TTL);
+        records = (DNSRecord[]) list.toArray(new DNSRecord[list.size()]);
+        DNSOutgoing.USE_DOMAIN_NAME_COMPRESSION = compression;
+    }
+
+    /**
+     * Builds an announcement, the way the Announcer and Responder do.
+     */
+    @Benchmark
+    public int announce() throws IOException
+    {
+        final DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
+        for (int i = 0; i < records.length; i++)
+        {
+            out.addAnswer(records[i], 0);
+        }
+        out.finish();
+        return out.off;
+    }
+
+    /**
+     * Builds an announcement in a message taken from the pool.
+     */
+    @Benchmark
+    public int announcePooled() throws IOException
+    {
+        final DNSOutgoing out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
+        for (int i = 0; i < records.length; i++)
+        {
+            out.addAnswer(records[i], 0);
+        }
+        out.finish();
+        final int size = out.off;
+        out.release();
+        return size;
+    }
+}
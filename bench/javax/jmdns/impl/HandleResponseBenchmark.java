@@ -0,0 +1,101 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.impl.tasks.VirtualTaskScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JmDNSImpl.handleResponse with a number of DNSListener's, half of them
+ * interested in the records of the response, the others in other names.
+ * <p/>
+ * The instance is bound to the loopback interface, and its tasks are never
+ * run, so that only the handling of the responses is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HandleResponseBenchmark
+{
+    @Param({"0", "10", "100"})
+    public int listeners;
+
+    private JmDNSImpl jmdns;
+    private byte[] announcement;
+    private byte[] goodbye;
+    private InetAddress source;
+
+    private final static class CountingListener implements DNSListener
+    {
+        int count;
+
+        public void updateRecord(JmDNSImpl jmdns, long now, DNSRecord record)
+        {
+            count++;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        jmdns = new JmDNSImpl(InetAddress.getByName("127.0.0.1"), new VirtualTaskScheduler());
+        final List records = BenchmarkPackets.announcement(1, 4, DNSConstants.DNS_TTL);
+        announcement = BenchmarkPackets.response(records);
+        goodbye = BenchmarkPackets.response(BenchmarkPackets.announcement(1, 4, 0));
+        source = InetAddress.getByName("192.168.0.1");
+        for (int i = 0; i < listeners; i++)
+        {
+            final String name = (i % 2 == 0) ? ((DNSRecord) records.get(i % records.size())).getName() : "Other " + i + "._http._tcp.local.";
+            jmdns.addListener(new CountingListener(), new DNSQuestion(name, DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        jmdns.close();
+    }
+
+    private DNSIncoming parse(byte[] packet) throws IOException
+    {
+        return new DNSIncoming(ByteBuffer.wrap(packet), source, DNSConstants.MDNS_PORT);
+    }
+
+    /**
+     * Handles a response whose records are all cached already, which only
+     * refreshes their TTL. This is what most responses on a busy network are.
+     */
+    @Benchmark
+    public void refresh() throws IOException
+    {
+        jmdns.handleResponse(parse(announcement));
+    }
+
+    /**
+     * Handles an announcement and the goodbye of the same services, so that
+     * every record is added to the cache, removed again, and delivered to the
+     * listeners twice.
+     */
+    @Benchmark
+    public void announceAndGoodbye() throws IOException
+    {
+        jmdns.handleResponse(parse(announcement));
+        jmdns.handleResponse(parse(goodbye));
+    }
+}
@@ -0,0 +1,52 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding of the TXT record of a service into its properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServiceInfoPropertiesBenchmark
+{
+    private ServiceInfoImpl info;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        info = new ServiceInfoImpl("_ipp._tcp.local.", "Printer", 631, 0, 0, BenchmarkPackets.text(1));
+    }
+
+    /**
+     * Decodes the properties, as after a TXT record has been received.
+     */
+    @Benchmark
+    public Hashtable decode()
+    {
+        info.props = null;
+        return info.getProperties();
+    }
+
+    /**
+     * Reads a property, which decodes the properties only the first time.
+     */
+    @Benchmark
+    public String getPropertyString()
+    {
+        return info.getPropertyString("ty");
+    }
+}
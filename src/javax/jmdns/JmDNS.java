@@ -7,6 +7,10 @@ package javax.jmdns;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.jmdns.impl.JmDNSImpl;
 
@@ -41,6 +45,20 @@ public abstract class JmDNS
         return new JmDNSImpl(addr);
     }
 
+    /**
+     * Create an instance of JmDNS which uses several network interfaces,
+     * given an IP-address of each. The interfaces share one cache and one
+     * host name, and each query is answered on the interface which received
+     * it, with the address of that interface.
+     *
+     * @throws IllegalArgumentException if there is no address, or an address
+     *  is null
+     */
+    public static JmDNS create(InetAddress[] addrs) throws IOException
+    {
+        return new JmDNSImpl(addrs, null);
+    }
+
     /**
      * Return the HostName associated with this JmDNS instance.
      * Note: May not be the same as what started.  The host name is subject to
@@ -81,6 +99,34 @@ public abstract class JmDNS
      */
     public abstract ServiceInfo getServiceInfo(String type, String name, int timeout);
 
+    /**
+     * Get service information without blocking. If the information is cached,
+     * the returned future is already complete. Otherwise the service is
+     * queried for, and the future completes once the information is received,
+     * or with null after 3 seconds. Concurrent requests for the same service
+     * share their queries. Cancelling the future stops the queries, once no
+     * other request is waiting for them.
+     * <p/>
+     * The future is completed by the listener executor, if there is one.
+     *
+     * @param type fully qualified service type, such as <code>_http._tcp.local.</code> .
+     * @param name unqualified service name, such as <code>foobar</code> .
+     * @return the future of the service information, which may be null
+     */
+    public abstract CompletableFuture<ServiceInfo> getServiceInfoAsync(String type, String name);
+
+    /**
+     * Get service information without blocking. The future completes with
+     * null if the information is not received within the timeout.
+     *
+     * @param type    full qualified service type, such as <code>_http._tcp.local.</code> .
+     * @param name    unqualified service name, such as <code>foobar</code> .
+     * @param timeout timeout in milliseconds
+     * @return the future of the service information, which may be null
+     * @see #getServiceInfoAsync(String, String)
+     */
+    public abstract CompletableFuture<ServiceInfo> getServiceInfoAsync(String type, String name, int timeout);
+
     /**
      * Request service information. The information about the service is
      * requested and the ServiceListener.resolveService method is called as soon
@@ -94,6 +140,32 @@ public abstract class JmDNS
      */
     public abstract void requestServiceInfo(String type, String name);
 
+    /**
+     * Request service information without blocking. The service type is
+     * registered, and the ServiceListener.resolveService method is called as
+     * soon as the information is available, as with
+     * {@link #requestServiceInfo(String, String)}. The returned future
+     * completes with the information, or with null after 3 seconds.
+     *
+     * @param type full qualified service type, such as <code>_http._tcp.local.</code> .
+     * @param name unqualified service name, such as <code>foobar</code> .
+     * @return the future of the service information, which may be null
+     * @see #getServiceInfoAsync(String, String)
+     */
+    public abstract CompletableFuture<ServiceInfo> requestServiceInfoAsync(String type, String name);
+
+    /**
+     * Request service information without blocking. The future completes
+     * with null if the information is not received within the timeout.
+     *
+     * @param type    full qualified service type, such as <code>_http._tcp.local.</code> .
+     * @param name    unqualified service name, such as <code>foobar</code> .
+     * @param persistent if true ServiceListener.resolveService will be called whenever new information is received, once the service is resolved.
+     * @param timeout timeout in milliseconds
+     * @return the future of the service information, which may be null
+     */
+    public abstract CompletableFuture<ServiceInfo> requestServiceInfoAsync(String type, String name, boolean persistent, int timeout);
+
     /**
      * Request service information. The information about the service is
      * requested and the ServiceListener.resolveService method is called as soon
@@ -159,26 +231,113 @@ public abstract class JmDNS
      */
     public abstract void removeServiceListener(String type, ServiceListener listener);
 
+    /**
+     * Deliver the events of the service listeners and the service type
+     * listeners with an executor. By default, and if the executor is null,
+     * listeners are called on the thread which processes the incoming
+     * messages, so a listener which blocks holds up discovery.
+     * <p/>
+     * Resolved events for a service which are still waiting to be delivered
+     * are coalesced into one event.
+     *
+     * @param executor executor calling the listeners, or null
+     * @param ordered  if true, each listener receives its events one at a time,
+     *                 in the order in which they occurred
+     */
+    public abstract void setListenerExecutor(Executor executor, boolean ordered);
+
+    /**
+     * Returns the executor which delivers the events of the listeners, or null
+     * if they are delivered synchronously.
+     */
+    public abstract Executor getListenerExecutor();
+
     /**
      * Register a service. The service is registered for access by other jmdns clients.
      * The name of the service may be changed to make it unique.
      */
     public abstract void registerService(ServiceInfo info) throws IOException;
 
+    /**
+     * Register several services at once, without blocking. The services are
+     * probed and announced together, in shared messages. The names of the
+     * services may be changed to make them unique.
+     * <p/>
+     * The returned future completes once all the services are announced. It
+     * maps the qualified name each service was requested with to its service
+     * info, whose name differs if the service had to be renamed, or to null
+     * if the service was unregistered before it was announced.
+     *
+     * @param infos services with distinct names
+     * @return the future of the registered services
+     */
+    public abstract CompletableFuture<Map<String, ServiceInfo>> registerServices(Collection<? extends ServiceInfo> infos) throws IOException;
+
+    /**
+     * Register a service without blocking. The name of the service may be
+     * changed to make it unique.
+     * <p/>
+     * The returned future completes with the service info once the service
+     * has been announced, or with null if it was unregistered first. If the
+     * timeout expires first, it completes with a
+     * {@link java.util.concurrent.TimeoutException}, and the registration
+     * goes on.
+     *
+     * @param info    the service
+     * @param timeout timeout in milliseconds, or 0 to wait as long as it takes
+     * @return the future of the registered service
+     */
+    public abstract CompletableFuture<ServiceInfo> registerServiceAsync(ServiceInfo info, long timeout);
+
     /** Reannounce a service.
      */
     public abstract void reannounceService(ServiceInfo info) throws IOException;
 
+    /**
+     * Reannounce a service without blocking. The returned future completes
+     * with the service info once it has been announced, or with null if the
+     * service is not registered. If the timeout expires first, it completes
+     * with a {@link java.util.concurrent.TimeoutException}. While the service
+     * is still being registered or reannounced, the future fails with an
+     * {@link IllegalStateException}.
+     *
+     * @param info    the service
+     * @param timeout timeout in milliseconds, or 0 to wait as long as it takes
+     * @return the future of the reannounced service
+     */
+    public abstract CompletableFuture<ServiceInfo> reannounceServiceAsync(ServiceInfo info, long timeout);
+
     /**
      * Unregister a service. The service should have been registered.
      */
     public abstract void unregisterService(ServiceInfo info);
 
+    /**
+     * Unregister a service without blocking. The service is removed at once,
+     * and the returned future completes once its goodbyes have been sent. If
+     * the timeout expires first, it completes with a
+     * {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param info    the service, which should have been registered
+     * @param timeout timeout in milliseconds, or 0 to wait as long as it takes
+     * @return the future of the goodbyes
+     */
+    public abstract CompletableFuture<Void> unregisterServiceAsync(ServiceInfo info, long timeout);
+
     /**
      * Unregister all services.
      */
     public abstract void unregisterAllServices();
 
+    /**
+     * Unregister all services without blocking.
+     *
+     * @param timeout timeout in milliseconds, or 0 to wait as long as it takes
+     * @return the future of the goodbyes
+     * @see #unregisterServiceAsync(ServiceInfo, long)
+     */
+    public abstract CompletableFuture<Void> unregisterAllServicesAsync(long timeout);
+
     /**
      * Register a service type. If this service type was not already known,
      * all service listeners will be notified of the new service type. Service types
@@ -199,10 +358,23 @@ public abstract class JmDNS
 
     /**
      * Returns a list of service infos of the specified type.
+     * <p/>
+     * The first call for a type starts browsing it. If the cache knows no
+     * services of the type, the call waits until no answers have arrived for
+     * 200 milliseconds, or for one second at most. Later calls do not block.
      *
      * @param type Service type name, such as <code>_http._tcp.local.</code>.
-     * @return An array of service instance names.
+     * @return An array of service instance names. It must not be modified.
      */
     public abstract ServiceInfo[] list(String type);
 
+    /**
+     * Starts browsing for the services of a type. The browser should be
+     * closed when it is no longer needed.
+     *
+     * @param type full qualified service type, such as <code>_http._tcp.local.</code>.
+     * @return a live view of the resolved services of the type
+     */
+    public abstract ServiceBrowser browse(String type);
+
 }
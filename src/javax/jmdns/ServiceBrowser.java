@@ -0,0 +1,120 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns;
+
+import java.util.Iterator;
+
+/**
+ * A live view of the resolved services of a type. The view is updated as
+ * services are resolved, updated and removed, and each update increases its
+ * version.
+ * <p/>
+ * A browser keeps browsing until it is closed.
+ *
+ * @see JmDNS#browse(String)
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public abstract class ServiceBrowser
+{
+    /**
+     * Returns the fully qualified type of the services.
+     */
+    public abstract String getType();
+
+    /**
+     * Returns the version of the view, which is increased by each change.
+     */
+    public abstract long getVersion();
+
+    /**
+     * Returns the services which are currently resolved, without blocking.
+     * The same array is returned until the view changes, so it must not be
+     * modified.
+     */
+    public abstract ServiceInfo[] getServices();
+
+    /**
+     * Returns the changes of the view since a version, in the order in which
+     * they occurred. Several changes of one service are reported as the last
+     * one only. A removal is only remembered for a limited time (10 minutes
+     * by default), so a caller which has not asked for longer should list the
+     * services again.
+     *
+     * @param version a version returned by {@link #getVersion()}, or 0 for
+     *                all services ever seen
+     * @return an iterator over instances of {@link Change}
+     */
+    public abstract Iterator getChanges(long version);
+
+    /**
+     * Waits until the view has not changed for some time, and returns its
+     * services. Before the first change, the time is counted from the
+     * creation of the browser.
+     *
+     * @param quiet   milliseconds without a change
+     * @param timeout maximum milliseconds to wait
+     * @return the services which are resolved
+     */
+    public abstract ServiceInfo[] waitForServices(long quiet, long timeout) throws InterruptedException;
+
+    /**
+     * Stops browsing. The view is no longer updated.
+     */
+    public abstract void close();
+
+    /**
+     * A change of the view.
+     */
+    public static final class Change
+    {
+        private final long version;
+        private final String name;
+        private final ServiceInfo info;
+
+        public Change(long version, String name, ServiceInfo info)
+        {
+            this.version = version;
+            this.name = name;
+            this.info = info;
+        }
+
+        /**
+         * Returns the version of the view which contains this change.
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Returns the instance name of the service.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the service info, or null if the service has been removed.
+         */
+        public ServiceInfo getInfo()
+        {
+            return info;
+        }
+
+        /**
+         * True if the service has been removed.
+         */
+        public boolean isRemoved()
+        {
+            return info == null;
+        }
+
+        public String toString()
+        {
+            return "change[" + version + "," + name + "," + (isRemoved() ? "removed" : info.toString()) + "]";
+        }
+    }
+}
@@ -0,0 +1,66 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte buffers of a fixed capacity, used to receive packets.
+ * <p/>
+ * Buffers are allocated when the pool is empty. At most
+ * <code>maxPooled</code> released buffers are kept, the others are left to
+ * the garbage collector.
+ */
+final class ByteBufferPool
+{
+    private final int capacity;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ConcurrentLinkedQueue buffers = new ConcurrentLinkedQueue();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param capacity  the capacity of the buffers
+     * @param maxPooled the maximum number of idle buffers kept in the pool
+     * @param direct    true to allocate direct buffers
+     */
+    ByteBufferPool(int capacity, int maxPooled, boolean direct)
+    {
+        this.capacity = capacity;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, or allocates a new one.
+     */
+    ByteBuffer take()
+    {
+        ByteBuffer buffer = (ByteBuffer) buffers.poll();
+        if (buffer == null)
+        {
+            return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used afterwards.
+     */
+    void release(ByteBuffer buffer)
+    {
+        if (pooled.incrementAndGet() <= maxPooled)
+        {
+            buffers.offer(buffer);
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Listen for multicast packets on the datagram channels of all JmDNS
+ * instances which use the NIO transport.
+ * <p/>
+ * A single selector thread receives the packets of all the channels into
+ * pooled direct buffers, and submits them to the packet pipeline of their
+ * JmDNS instance, which parses and handles them.
+ *
+ * @see JmDNSImpl#USE_NIO_TRANSPORT
+ */
+final class ChannelListener implements Runnable
+{
+    private static Logger logger = Logger.getLogger(ChannelListener.class.getName());
+
+    private static ChannelListener instance;
+
+    private final Selector selector;
+
+    /**
+     * Channels waiting to be registered with the selector. Registration must
+     * happen on the selector thread.
+     */
+    private final ConcurrentLinkedQueue pending = new ConcurrentLinkedQueue();
+
+    private final ByteBufferPool buffers = new ByteBufferPool(DNSConstants.MAX_MSG_ABSOLUTE, 64, true);
+
+    private ChannelListener() throws IOException
+    {
+        selector = Selector.open();
+    }
+
+    /**
+     * Returns the shared listener, starting its thread if needed.
+     */
+    static synchronized ChannelListener getInstance() throws IOException
+    {
+        if (instance == null)
+        {
+            instance = new ChannelListener();
+            Thread thread = new Thread(instance, "JmDNS.ChannelListener");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts listening on a non-blocking channel on behalf of a JmDNS
+     * instance. The channel stops being listened to when it is closed.
+     */
+    void register(JmDNSImpl jmDNSImpl, DatagramChannel channel)
+    {
+        pending.add(new Registration(jmDNSImpl, channel));
+        selector.wakeup();
+    }
+
+    /**
+     * The attachment of the selection key of a channel.
+     */
+    private final class Registration
+    {
+        final JmDNSImpl jmDNSImpl;
+        final DatagramChannel channel;
+
+        Registration(JmDNSImpl jmDNSImpl, DatagramChannel channel)
+        {
+            this.jmDNSImpl = jmDNSImpl;
+            this.channel = channel;
+        }
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (true)
+            {
+                selector.select();
+                registerPending();
+                for (Iterator i = selector.selectedKeys().iterator(); i.hasNext();)
+                {
+                    SelectionKey key = (SelectionKey) i.next();
+                    i.remove();
+                    if (key.isValid() && key.isReadable())
+                    {
+                        receive(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            logger.log(Level.WARNING, "run() exception ", e);
+        }
+        catch (ClosedSelectorException e)
+        {
+            logger.log(Level.WARNING, "run() exception ", e);
+        }
+        finally
+        {
+            synchronized (ChannelListener.class)
+            {
+                instance = null;
+            }
+        }
+    }
+
+    private void registerPending()
+    {
+        Registration registration;
+        while ((registration = (Registration) pending.poll()) != null)
+        {
+            try
+            {
+                registration.channel.register(selector, SelectionKey.OP_READ, registration);
+            }
+            catch (ClosedChannelException e)
+            {
+                // The instance was closed before we got to it.
+            }
+        }
+    }
+
+    /**
+     * Receives all the packets which are waiting on a channel.
+     */
+    private void receive(SelectionKey key)
+    {
+        final Registration registration = (Registration) key.attachment();
+        while (true)
+        {
+            ByteBuffer buffer = buffers.take();
+            InetSocketAddress from;
+            try
+            {
+                from = (InetSocketAddress) registration.channel.receive(buffer);
+            }
+            catch (IOException e)
+            {
+                buffers.release(buffer);
+                key.cancel();
+                if (registration.jmDNSImpl.getState() != DNSState.CANCELED)
+                {
+                    logger.log(Level.WARNING, "receive() exception ", e);
+                    // The recovery is scheduled, so the other channels are
+                    // not kept waiting.
+                    registration.jmDNSImpl.recover();
+                }
+                return;
+            }
+            if (from == null)
+            {
+                buffers.release(buffer);
+                return;
+            }
+            buffer.flip();
+            registration.jmDNSImpl.getPipeline().submit(buffer, buffers, from.getAddress(), from.getPort());
+        }
+    }
+}
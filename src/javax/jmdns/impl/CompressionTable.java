@@ -0,0 +1,217 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+/**
+ * The names written into an outgoing message, used for domain name
+ * compression.
+ * <p/>
+ * The names form a trie of labels, rooted at the top level domain. Each node
+ * stands for a written suffix, and holds the offset where it was written. A
+ * name is compressed by following its labels from the last one, which finds
+ * the longest written suffix in one pass. Labels are the encoded bytes of
+ * {@link DNSNameTable.Entry#label}, so they are usually found by identity.
+ * <p/>
+ * The children of all nodes are kept in one open addressing table, keyed by
+ * parent and label, over plain arrays. Adding and finding labels does not
+ * allocate. Nodes are removed in the reverse order of their addition only,
+ * which is what a message does when a record does not fit. As no node added
+ * later remains, the slot of the last node can simply be emptied.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class CompressionTable
+{
+    /**
+     * The parent of the nodes of top level domains.
+     */
+    final static int ROOT = -1;
+
+    /**
+     * Initial number of nodes.
+     */
+    private final static int INITIAL_SIZE = 32;
+
+    // The nodes, in the order in which they were added.
+    private int[] parents = new int[INITIAL_SIZE];
+    private byte[][] labels = new byte[INITIAL_SIZE][];
+    private int[] hashes = new int[INITIAL_SIZE];
+    private int[] offsets = new int[INITIAL_SIZE];
+    private int[] slots = new int[INITIAL_SIZE];
+    private int size;
+
+    /**
+     * The nodes plus one, by hash of parent and label. Has twice as many
+     * slots as there can be nodes, and its size is a power of two.
+     */
+    private int[] table = new int[INITIAL_SIZE * 2];
+
+    /**
+     * Returns the child of a node with a label, or -1 if there is none.
+     */
+    int find(int parent, byte[] label, int labelHash)
+    {
+        final int mask = table.length - 1;
+        for (int i = hash(parent, labelHash) & mask;; i = (i + 1) & mask)
+        {
+            final int node = table[i] - 1;
+            if (node < 0)
+            {
+                return -1;
+            }
+            if (parents[node] == parent && hashes[node] == labelHash && sameLabel(labels[node], label))
+            {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Adds the child of a node with a label, which must not be in the table
+     * yet, written at an offset.
+     *
+     * @return the new node
+     */
+    int add(int parent, byte[] label, int labelHash, int offset)
+    {
+        if (size == parents.length)
+        {
+            grow();
+        }
+        final int node = size++;
+        parents[node] = parent;
+        labels[node] = label;
+        hashes[node] = labelHash;
+        offsets[node] = offset;
+        index(node);
+        return node;
+    }
+
+    /**
+     * Returns the offset where the suffix of a node was written.
+     */
+    int getOffset(int node)
+    {
+        return offsets[node];
+    }
+
+    /**
+     * Removes the suffixes written at or after an offset.
+     */
+    void truncate(int offset)
+    {
+        while (size > 0 && offsets[size - 1] >= offset)
+        {
+            size--;
+            table[slots[size]] = 0;
+            labels[size] = null;
+        }
+    }
+
+    /**
+     * Removes all suffixes.
+     */
+    void clear()
+    {
+        truncate(0);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    private void index(int node)
+    {
+        final int mask = table.length - 1;
+        int i = hash(parents[node], hashes[node]) & mask;
+        while (table[i] != 0)
+        {
+            i = (i + 1) & mask;
+        }
+        table[i] = node + 1;
+        slots[node] = i;
+    }
+
+    /**
+     * Doubles the number of nodes. The nodes keep their numbers, only the
+     * table is built again.
+     */
+    private void grow()
+    {
+        final int n = parents.length * 2;
+        parents = copyOf(parents, n);
+        hashes = copyOf(hashes, n);
+        offsets = copyOf(offsets, n);
+        slots = copyOf(slots, n);
+        final byte[][] grown = new byte[n][];
+        System.arraycopy(labels, 0, grown, 0, size);
+        labels = grown;
+        table = new int[n * 2];
+        for (int node = 0; node < size; node++)
+        {
+            index(node);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length)
+    {
+        final int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static boolean sameLabel(byte[] a, byte[] b)
+    {
+        if (a == b)
+        {
+            return true;
+        }
+        if (a.length != b.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++)
+        {
+            if (a[i] != b[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int parent, int labelHash)
+    {
+        final int h = parent * 31 + labelHash;
+        return h ^ (h >>> 16);
+    }
+
+    public String toString()
+    {
+        final StringBuffer buf = new StringBuffer();
+        buf.append('{');
+        for (int node = 0; node < size; node++)
+        {
+            if (node > 0)
+            {
+                buf.append(", ");
+            }
+            for (int p = node; p != ROOT; p = parents[p])
+            {
+                final byte[] label = labels[p];
+                for (int i = 1; i < label.length; i++)
+                {
+                    buf.append((char) (label[i] & 0xFF));
+                }
+                buf.append('.');
+            }
+            buf.append('=');
+            buf.append(offsets[node]);
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+}
@@ -4,9 +4,15 @@
 
 package javax.jmdns.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -16,7 +22,7 @@ import java.util.logging.Logger;
  * current implementation of the API of DNSCache does expose the cache nodes to
  * clients. Clients must explicitly deal with the nodes when iterating over
  * entries in the cache. Here's how to iterate over all entries in the cache:
- * 
+ *
  * <pre>
  * for (Iterator i=dnscache.iterator(); i.hasNext(); ) {
  *    for (DNSCache.CacheNode n = (DNSCache.CacheNode) i.next(); n != null; n.next()) {
@@ -25,16 +31,35 @@ import java.util.logging.Logger;
  *    }
  * }
  * </pre>
- * 
+ *
  * <p/> And here's how to iterate over all entries having a given name:
- * 
+ *
  * <pre>
  * for (DNSCache.CacheNode n = (DNSCache.CacheNode) dnscache.find(name); n != null; n.next()) {
  *     DNSEntry entry = n.getValue();
  *     ...do something with entry...
  * }
  * </pre>
- * 
+ *
+ * <p/> Entries are filed by their lower case name, as resolved by the
+ * <code>DNSNameTable</code>, so that lookups neither lower case nor hash the
+ * name again.
+ *
+ * <p/> The cache does not use a global lock. The linked lists of
+ * <code>CacheNode</code>'s are immutable: a writer builds a new list for the
+ * name it modifies and swaps it in atomically, so readers never block and
+ * always iterate over a consistent snapshot of the entries of a name. Writers
+ * of different names do not contend with each other. A secondary index keyed
+ * by type and class allows to look up all entries of a given type without
+ * scanning the whole cache.
+ *
+ * <p/> Records are also filed in a timing wheel by expiration time. Method
+ * <code>expire(now)</code> only visits the slots that came due since the last
+ * call, instead of checking every record in the cache. A record whose TTL is
+ * extended stays in its slot and is moved to a later slot when that slot
+ * comes due; a record whose TTL is shortened is filed again right away. Both
+ * cases cost O(1).
+ *
  * @version %I%, %G%
  * @author Arthur van Hoff, Werner Randelshofer, Rick Blair
  */
@@ -55,28 +80,65 @@ public class DNSCache
     /**
      * The number of DNSEntry's in the cache.
      */
-    private int size;
+    private final AtomicInteger size = new AtomicInteger();
 
     /**
      * The hashtable used internally to store the entries of the cache. Keys are
-     * instances of String. The String contains an unqualified service name.
-     * Values are linked lists of CacheNode instances.
+     * instances of String. The String contains the lower case name of the
+     * entries. Values are immutable linked lists of CacheNode instances.
      */
-    private final HashMap hashtable;
+    private final ConcurrentMap hashtable;
+
+    /**
+     * Secondary index of the cache. Keys are instances of Integer combining
+     * the type and the class of the entries. Values are concurrent maps
+     * used as sets of DNSEntry's, compared by identity.
+     */
+    private final ConcurrentMap typeIndex;
+
+    /**
+     * Resolution of the timing wheel in milliseconds.
+     */
+    private final static int WHEEL_RESOLUTION = 1000;
+
+    /**
+     * Number of slots in the timing wheel. With a resolution of one second
+     * this covers more than an hour, so that records with the default TTL
+     * are visited once, when they expire. Must be a power of two.
+     */
+    private final static int WHEEL_SIZE = 4096;
+
+    /**
+     * The slots of the timing wheel. Each slot is a queue of Expiry's.
+     */
+    private final ConcurrentLinkedQueue[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+
+    /**
+     * The last tick of the timing wheel which has been processed by
+     * <code>expire(now)</code>.
+     */
+    private volatile long lastTick;
 
     /**
      * Cache nodes are used to implement storage of multiple DNSEntry's of the
-     * same name in the cache.
+     * same name in the cache. Cache nodes are never modified once they have
+     * been published in the cache.
      */
     public static class CacheNode
     {
         private static Logger logger = Logger.getLogger(CacheNode.class.getName());
         private final DNSEntry value;
-        private CacheNode next;
+        private final CacheNode next;
 
         public CacheNode(DNSEntry value)
+        {
+            this(value, null);
+        }
+
+        CacheNode(DNSEntry value, CacheNode next)
         {
             this.value = value;
+            this.next = next;
         }
 
         public CacheNode next()
@@ -90,91 +152,191 @@ public class DNSCache
         }
     }
 
+    /**
+     * Identity wrapper used as key of the sets of the type index. DNSEntry
+     * defines equals by name, type and class only, which would merge distinct
+     * records of the same name.
+     */
+    private static final class IdentityKey
+    {
+        private final DNSEntry entry;
+
+        IdentityKey(DNSEntry entry)
+        {
+            this.entry = entry;
+        }
+
+        public boolean equals(Object obj)
+        {
+            return (obj instanceof IdentityKey) && ((IdentityKey) obj).entry == entry;
+        }
+
+        public int hashCode()
+        {
+            return System.identityHashCode(entry);
+        }
+    }
+
+    /**
+     * Position of a record in the timing wheel. A record refers to its
+     * current position, stale positions left behind in the wheel are
+     * recognized by that and skipped.
+     */
+    final class Expiry
+    {
+        private final DNSRecord record;
+        private final long tick;
+
+        Expiry(DNSRecord record, long tick)
+        {
+            this.record = record;
+            this.tick = tick;
+        }
+
+        /**
+         * Called by the record after its TTL has been reset.
+         */
+        void reschedule()
+        {
+            if (tickOf(record) < tick)
+            {
+                schedule(record);
+            }
+        }
+    }
+
     /**
      * Create a table with a given initial size.
      */
     public DNSCache(final int size)
     {
-        hashtable = new HashMap(size);
+        hashtable = new ConcurrentHashMap(size);
+        typeIndex = new ConcurrentHashMap();
+        for (int i = 0; i < WHEEL_SIZE; i++)
+        {
+            wheel[i] = new ConcurrentLinkedQueue();
+        }
+        lastTick = System.currentTimeMillis() / WHEEL_RESOLUTION - 1;
     }
 
     /**
      * Clears the cache.
      */
-    public synchronized void clear()
+    public void clear()
     {
-        hashtable.clear();
-        size = 0;
+        for (Iterator i = hashtable.keySet().iterator(); i.hasNext();)
+        {
+            final Object name = i.next();
+            CacheNode node;
+            while ((node = (CacheNode) hashtable.get(name)) != null)
+            {
+                if (hashtable.remove(name, node))
+                {
+                    for (CacheNode n = node; n != null; n = n.next)
+                    {
+                        unindex(n.value);
+                        unschedule(n.value);
+                        size.decrementAndGet();
+                    }
+                    break;
+                }
+            }
+        }
     }
 
     /**
      * Adds an entry to the table.
      */
-    public synchronized void add(final DNSEntry entry)
+    public void add(final DNSEntry entry)
     {
         // logger.log("DNSCache.add("+entry.getName()+")");
-        final CacheNode newValue = new CacheNode(entry);
-        final CacheNode node = (CacheNode) hashtable.get(entry.getName());
-        if (node == null)
+        final String name = entry.key;
+        index(entry);
+        if (entry instanceof DNSRecord)
         {
-            hashtable.put(entry.getName(), newValue);
+            schedule((DNSRecord) entry);
         }
-        else
+        // Count the entry before it can be seen, so that a concurrent remove
+        // never takes the size below zero.
+        size.incrementAndGet();
+        while (true)
         {
-            newValue.next = node.next;
-            node.next = newValue;
+            final CacheNode node = (CacheNode) hashtable.get(name);
+            if (node == null)
+            {
+                if (hashtable.putIfAbsent(name, new CacheNode(entry)) == null)
+                {
+                    break;
+                }
+            }
+            else
+            {
+                // Keep the head of the list in front, as the previous
+                // implementation did.
+                final CacheNode newValue = new CacheNode(node.value, new CacheNode(entry, node.next));
+                if (hashtable.replace(name, node, newValue))
+                {
+                    break;
+                }
+            }
         }
-        size++;
     }
 
     /**
      * Remove a specific entry from the table. Returns true if the entry was
      * found.
      */
-    public synchronized boolean remove(DNSEntry entry)
+    public boolean remove(DNSEntry entry)
     {
-        CacheNode node = (CacheNode) hashtable.get(entry.getName());
-        if (node != null)
+        final String name = entry.key;
+        while (true)
         {
-            if (node.value == entry)
+            final CacheNode node = (CacheNode) hashtable.get(name);
+            if (node == null)
             {
-                if (node.next == null)
-                {
-                    hashtable.remove(entry.getName());
-                }
-                else
-                {
-                    hashtable.put(entry.getName(), node.next);
-                }
-                size--;
-                return true;
+                return false;
             }
-
-            CacheNode previous = node;
-            node = node.next;
-            while (node != null)
+            final CacheNode newValue = without(node, entry);
+            if (newValue == node)
             {
-                if (node.value == entry)
-                {
-                    previous.next = node.next;
-                    size--;
-                    return true;
-                }
-                previous = node;
-                node = node.next;
+                return false;
+            }
+            final boolean swapped = (newValue == null) ? hashtable.remove(name, node) : hashtable.replace(name, node, newValue);
+            if (swapped)
+            {
+                unindex(entry);
+                unschedule(entry);
+                size.decrementAndGet();
+                return true;
             }
-            ;
         }
-        return false;
+    }
+
+    /**
+     * Returns a copy of the list starting at node without the given entry, or
+     * node itself if the entry is not part of the list.
+     */
+    private static CacheNode without(CacheNode node, DNSEntry entry)
+    {
+        if (node == null)
+        {
+            return null;
+        }
+        if (node.value == entry)
+        {
+            return node.next;
+        }
+        final CacheNode tail = without(node.next, entry);
+        return (tail == node.next) ? node : new CacheNode(node.value, tail);
     }
 
     /**
      * Get a matching DNS entry from the table (using equals). Returns the entry
      * that was found.
      */
-    public synchronized DNSEntry get(DNSEntry entry)
+    public DNSEntry get(DNSEntry entry)
     {
-        for (CacheNode node = find(entry.getName()); node != null; node = node.next)
+        for (CacheNode node = (CacheNode) hashtable.get(entry.key); node != null; node = node.next)
         {
             if (node.value.equals(entry))
             {
@@ -184,14 +346,33 @@ public class DNSCache
         return null;
     }
 
+    /**
+     * Get the cached record which is the same as a record of an incoming
+     * message, without creating the record.
+     */
+    public DNSRecord get(DNSIncoming.RecordView view) throws IOException
+    {
+        final String name = view.getName();
+        final int type = view.getType();
+        final int clazz = view.getClazz();
+        for (CacheNode node = find(name); node != null; node = node.next)
+        {
+            if (node.value.type == type && node.value.clazz == clazz && node.value.name.equals(name) && node.value instanceof DNSRecord && ((DNSRecord) node.value).sameValue(view))
+            {
+                return (DNSRecord) node.value;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get a matching DNS entry from the table.
      */
-    public synchronized DNSEntry get(String name, int type, int clazz)
+    public DNSEntry get(String name, int type, int clazz)
     {
         for (CacheNode node = find(name); node != null; node = node.next)
         {
-            if (node.value.type == type && node.value.clazz == clazz)
+            if (node.value.type == type && node.value.clazz == clazz && node.value.name.equals(name))
             {
                 return node.value;
             }
@@ -199,32 +380,195 @@ public class DNSCache
         return null;
     }
 
+    /**
+     * Returns all entries of the given type and class. The returned list is a
+     * snapshot, it is not affected by later changes of the cache.
+     */
+    public List getEntries(int type, int clazz)
+    {
+        final ConcurrentMap entries = (ConcurrentMap) typeIndex.get(typeKey(type, clazz));
+        if (entries == null)
+        {
+            return Collections.EMPTY_LIST;
+        }
+        final List list = new ArrayList(entries.size());
+        for (Iterator i = entries.keySet().iterator(); i.hasNext();)
+        {
+            list.add(((IdentityKey) i.next()).entry);
+        }
+        return list;
+    }
+
     /**
      * Iterates over all cache nodes. The iterator returns instances of
      * DNSCache.CacheNode. Each instance returned is the first node of a linked
      * list. To retrieve all entries, one must iterate over this linked list.
      * See code snippets in the header of the class.
      */
-    public synchronized Iterator iterator()
+    public Iterator iterator()
     {
-        return new ArrayList(hashtable.values()).iterator();
+        return hashtable.values().iterator();
     }
 
     /**
      * Iterate only over items with matching name. Returns an instance of
      * DNSCache.CacheNode or null. If an instance is returned, it is the first
      * node of a linked list. To retrieve all entries, one must iterate over
-     * this linked list.
+     * this linked list. Names are matched regardless of case, so the
+     * list may contain entries whose name is spelled differently.
+     */
+    public CacheNode find(String name)
+    {
+        return (CacheNode) hashtable.get(DNSNameTable.getKey(name));
+    }
+
+    /**
+     * Removes the records which are expired at the given time from the timing
+     * wheel, and returns them. The records are still in the cache, the caller
+     * is expected to check them again with <code>isExpired(record, now)</code>
+     * and to remove them after having notified the listeners.
+     */
+    public List expire(long now)
+    {
+        final long nowTick = now / WHEEL_RESOLUTION;
+        List expired = null;
+        // Never visit a slot more than once per call.
+        long tick = Math.max(lastTick + 1, nowTick - WHEEL_SIZE + 1);
+        for (; tick <= nowTick; tick++)
+        {
+            final ConcurrentLinkedQueue slot = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+            // Drain the slot first, records which are not due yet are filed
+            // again and may go into the same slot.
+            final List due = new ArrayList();
+            Object node;
+            while ((node = slot.poll()) != null)
+            {
+                due.add(node);
+            }
+            for (Iterator i = due.iterator(); i.hasNext();)
+            {
+                final Expiry expiry = (Expiry) i.next();
+                final DNSRecord record = expiry.record;
+                if (record.expiry != expiry)
+                {
+                    // Removed from the cache or filed again in the meantime.
+                    continue;
+                }
+                if (record.isExpired(now))
+                {
+                    record.expiry = null;
+                    if (expired == null)
+                    {
+                        expired = new ArrayList();
+                    }
+                    expired.add(record);
+                }
+                else
+                {
+                    schedule(record);
+                }
+            }
+        }
+        // The current tick is not over yet, visit it again next time.
+        lastTick = nowTick - 1;
+        return (expired != null) ? expired : Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Tells whether a record returned by <code>expire(now)</code> is still to
+     * be removed. A record which has been removed since is not, and a record
+     * whose TTL has been reset since is filed again in the timing wheel.
+     */
+    public boolean isExpired(DNSRecord record, long now)
+    {
+        CacheNode node = (CacheNode) hashtable.get(record.key);
+        while (node != null && node.value != record)
+        {
+            node = node.next;
+        }
+        if (node == null)
+        {
+            return false;
+        }
+        if (record.isExpired(now))
+        {
+            return true;
+        }
+        if (record.expiry == null)
+        {
+            schedule(record);
+        }
+        return false;
+    }
+
+    private static long tickOf(DNSRecord record)
+    {
+        return record.getExpirationTime(100) / WHEEL_RESOLUTION;
+    }
+
+    /**
+     * Files a record in the timing wheel. Records expiring in a tick that
+     * has already been processed are filed in the next tick to process.
      */
-    public synchronized CacheNode find(String name)
+    void schedule(DNSRecord record)
     {
-        return (CacheNode) hashtable.get(name);
+        final long tick = Math.max(tickOf(record), lastTick + 1);
+        final Expiry expiry = new Expiry(record, tick);
+        record.expiry = expiry;
+        wheel[(int) (tick & (WHEEL_SIZE - 1))].add(expiry);
+    }
+
+    private void unschedule(DNSEntry entry)
+    {
+        if (entry instanceof DNSRecord)
+        {
+            // The position left in the wheel is skipped once it comes due.
+            ((DNSRecord) entry).expiry = null;
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    private static Integer typeKey(int type, int clazz)
+    {
+        return Integer.valueOf((type << 16) | clazz);
+    }
+
+    private void index(DNSEntry entry)
+    {
+        final Integer key = typeKey(entry.type, entry.clazz);
+        ConcurrentMap entries = (ConcurrentMap) typeIndex.get(key);
+        if (entries == null)
+        {
+            final ConcurrentMap newEntries = new ConcurrentHashMap();
+            entries = (ConcurrentMap) typeIndex.putIfAbsent(key, newEntries);
+            if (entries == null)
+            {
+                entries = newEntries;
+            }
+        }
+        entries.put(new IdentityKey(entry), Boolean.TRUE);
+    }
+
+    private void unindex(DNSEntry entry)
+    {
+        final ConcurrentMap entries = (ConcurrentMap) typeIndex.get(typeKey(entry.type, entry.clazz));
+        if (entries != null)
+        {
+            entries.remove(new IdentityKey(entry));
+        }
     }
 
     /**
      * List all entries for debugging.
      */
-    public synchronized void print()
+    public void print()
     {
         for (final Iterator i = iterator(); i.hasNext();)
         {
@@ -235,7 +579,7 @@ public class DNSCache
         }
     }
 
-    public synchronized String toString()
+    public String toString()
     {
         final StringBuffer aLog = new StringBuffer();
         aLog.append("\t---- cache ----");
@@ -111,6 +111,8 @@ public final class DNSConstants
     
     public final static int SHARED_QUERY_TIME = 20;            //milliseconds before send shared query
     public final static int QUERY_WAIT_INTERVAL = 225;           //milliseconds between query loops.
+    public final static int QUERY_MIN_INTERVAL = 1000;          //milliseconds between the first continuous queries.
+    public final static int QUERY_MAX_INTERVAL = 60 * 60 * 1000; //maximal milliseconds between continuous queries.
     public final static int PROBE_WAIT_INTERVAL = 250;           //milliseconds between probe loops.
     public final static int RESPONSE_MIN_WAIT_INTERVAL = 20;            //minimal wait interval for response.
     public final static int RESPONSE_MAX_WAIT_INTERVAL = 115;           //maximal wait interval for response
@@ -28,8 +28,9 @@ public class DNSEntry
      */
     DNSEntry(String name, int type, int clazz)
     {
-        this.key = name.toLowerCase();
-        this.name = name;
+        DNSNameTable.Entry entry = DNSNameTable.getEntry(name);
+        this.key = entry.key;
+        this.name = entry.name;
         this.type = type;
         this.clazz = clazz & DNSConstants.CLASS_MASK;
         this.unique = (clazz & DNSConstants.CLASS_UNIQUE) != 0;
@@ -53,11 +54,36 @@ public class DNSEntry
         return name;
     }
 
+    /**
+     * Returns the name in lower case.
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
     public int getType()
     {
         return type;
     }
 
+    /**
+     * Returns the class, without the unique bit.
+     */
+    public int getClazz()
+    {
+        return clazz;
+    }
+
+    /**
+     * Returns true if the unique bit is set. For a question, this is the bit
+     * asking for a unicast response.
+     */
+    public boolean isUnique()
+    {
+        return unique;
+    }
+
     /**
      * Overriden, to return a value which is consistent with the value returned
      * by equals(Object).
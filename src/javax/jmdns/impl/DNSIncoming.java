@@ -9,6 +9,7 @@ package javax.jmdns.impl;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -18,6 +19,14 @@ import java.util.logging.Logger;
 
 /**
  * Parse an incoming DNS message into its components.
+ * <p/>
+ * The message is read in place from a ByteBuffer. The constructor only
+ * validates the message and indexes the position of its records. The
+ * records are materialized into DNSRecord instances when they are asked for,
+ * either all at once through <code>getAnswers()</code>, or one by one through
+ * a <code>RecordView</code>. A RecordView is a flyweight which allows to
+ * inspect a record on the wire, and to compare it with a cached record,
+ * without creating any objects.
  *
  * @version %I%, %G%
  * @author	Arthur van Hoff, Werner Randelshofer, Pierre Frisch, Daniel Bobbert
@@ -25,22 +34,34 @@ import java.util.logging.Logger;
 public final class DNSIncoming
 {
     private static Logger logger = Logger.getLogger(DNSIncoming.class.getName());
-    
+
     // This is a hack to handle a bug in the BonjourConformanceTest
     // It is sending out target strings that don't follow the "domain name"
-    // format. 
+    // format.
     public static boolean USE_DOMAIN_NAME_FORMAT_FOR_SRV_TARGET = true;
-    
+
     // Implementation note: This vector should be immutable.
     // If a client of DNSIncoming changes the contents of this vector,
     // we get undesired results. To fix this, we have to migrate to
     // the Collections API of Java 1.2. i.e we replace Vector by List.
     // final static Vector EMPTY = new Vector();
-    
-    private DatagramPacket packet;
+
+    /**
+     * Number of ints used per record in the record index.
+     */
+    private final static int RECORD_STRIDE = 6;
+    private final static int NAME = 0;
+    private final static int TYPE = 1;
+    private final static int CLASS = 2;
+    private final static int TTL = 3;
+    private final static int RDATA = 4;
+    private final static int RDLENGTH = 5;
+
+    private final InetAddress source;
+    private final int port;
     private int off;
-    private int len;
-    private byte data[];
+    private final int len;
+    private final ByteBuffer data;
 
     int id;
     private int flags;
@@ -51,20 +72,65 @@ public final class DNSIncoming
     private long receivedTime;
 
     private List questions;
-    List answers;
+
+    /**
+     * The materialized records, or null if they have not been materialized
+     * yet.
+     */
+    private List answers;
+
+    /**
+     * The known answers of this query, or null if they have not been
+     * collected yet.
+     */
+    private KnownAnswers knownAnswers;
+
+    /**
+     * Position of the records in the message. Each record uses
+     * RECORD_STRIDE consecutive ints.
+     */
+    private int[] records;
+    private int numRecords;
+
+    /**
+     * Names which have been decoded, keyed by their offset in the message.
+     * Compression pointers usually refer to the same few offsets, so each
+     * name is decoded only once per message.
+     */
+    private int[] nameOffsets;
+    private String[] names;
+    private int numNames;
+
+    /**
+     * Buffer used to decode names and strings.
+     */
+    private char[] chars = new char[256];
 
     /**
      * Parse a message from a datagram packet.
      */
     DNSIncoming(DatagramPacket packet) throws IOException
     {
-        this.packet = packet;
-        InetAddress source = packet.getAddress();
-        this.data = packet.getData();
-        this.len = packet.getLength();
-        this.off = packet.getOffset();
+        this(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()), packet.getAddress(), packet.getPort());
+    }
+
+    /**
+     * Parse a message from the remaining bytes of a buffer. The buffer must
+     * not be modified as long as the records of this message have not been
+     * materialized.
+     *
+     * @param buffer the message
+     * @param source the address which sent the message
+     * @param port   the port from which the message was sent
+     */
+    DNSIncoming(ByteBuffer buffer, InetAddress source, int port) throws IOException
+    {
+        this.data = buffer.slice();
+        this.source = source;
+        this.port = port;
+        this.len = data.remaining();
+        this.off = 0;
         this.questions = Collections.EMPTY_LIST;
-        this.answers = Collections.EMPTY_LIST;
         this.receivedTime = System.currentTimeMillis();
 
         try
@@ -79,112 +145,88 @@ public final class DNSIncoming
             // parse questions
             if (numQuestions > 0)
             {
-                questions = Collections.synchronizedList(new ArrayList(numQuestions));
+                questions = new ArrayList(numQuestions);
                 for (int i = 0; i < numQuestions; i++)
                 {
-                    DNSQuestion question = new DNSQuestion(readName(), readUnsignedShort(), readUnsignedShort());
+                    int nameOffset = off;
+                    off = skipName(off);
+                    DNSQuestion question = new DNSQuestion(readName(nameOffset), readUnsignedShort(), readUnsignedShort());
                     questions.add(question);
                 }
             }
 
-            // parse answers
+            // index answers
             int n = numAnswers + numAuthorities + numAdditionals;
-            if (n > 0)
+            records = new int[n * RECORD_STRIDE];
+            for (int i = 0; i < n; i++)
             {
-                answers = Collections.synchronizedList(new ArrayList(n));
-                for (int i = 0; i < n; i++)
+                int nameOffset = off;
+                off = skipName(off);
+                int type = readUnsignedShort();
+                int clazz = readUnsignedShort();
+                int ttl = readInt();
+                int len = readUnsignedShort();
+                int end = off + len;
+                if (end > this.len)
                 {
-                    String domain = readName();
-                    int type = readUnsignedShort();
-                    int clazz = readUnsignedShort();
-                    int ttl = readInt();
-                    int len = readUnsignedShort();
-                    int end = off + len;
-                    DNSRecord rec = null;
-
-                    switch (type)
-                    {
-                        case DNSConstants.TYPE_A:		// IPv4
-                        case DNSConstants.TYPE_AAAA:	// IPv6 FIXME [PJYF Oct 14 2004] This has not been tested
-                            rec = new DNSRecord.Address(domain, type, clazz, ttl, readBytes(off, len));
-                            break;
-                        case DNSConstants.TYPE_CNAME:
-                        case DNSConstants.TYPE_PTR:
-                            String service = "";
-                            try {
-                                service = readName();                                
-                            } catch (IOException e){
-                                // there was a problem reading the service name
-                                e.printStackTrace();
-                            }
-                            rec = new DNSRecord.Pointer(domain, type, clazz, ttl, service);
-                            break;
-                        case DNSConstants.TYPE_TXT:
-                            rec = new DNSRecord.Text(domain, type, clazz, ttl, readBytes(off, len));
-                            break;
-                        case DNSConstants.TYPE_SRV:
-                            int priority = readUnsignedShort();
-                            int weight = readUnsignedShort();
-                            int port = readUnsignedShort();
-                            String target = "";
-                            try {
-                                // This is a hack to handle a bug in the BonjourConformanceTest
-                                // It is sending out target strings that don't follow the "domain name"
-                                // format. 
-                                
-                                if(USE_DOMAIN_NAME_FORMAT_FOR_SRV_TARGET){
-                                    target = readName();                                    
-                                } else {
-                                    target = readNonNameString();
-                                }
-                            } catch (IOException e) {
-                                // this can happen if the type of the label 
-                                // cannot be handled.  
-                                // down below the offset gets advanced to the end
-                                // of the record 
-                                e.printStackTrace();
-                            }
-                            rec = new DNSRecord.Service(domain, type, clazz, ttl,
-                                priority, weight, port, target);
-                            break;
-                        case DNSConstants.TYPE_HINFO:
-                            // Maybe we should do something with those
-                            break;
-                        default :
-                            logger.finer("DNSIncoming() unknown type:" + type);
-                            break;
-                    }
+                    throw new IOException("parser error: record ends at offset=" + end);
+                }
 
-                    if (rec != null)
+                boolean known;
+                switch (type)
+                {
+                    case DNSConstants.TYPE_A:		// IPv4
+                    case DNSConstants.TYPE_AAAA:	// IPv6 FIXME [PJYF Oct 14 2004] This has not been tested
+                    case DNSConstants.TYPE_CNAME:
+                    case DNSConstants.TYPE_PTR:
+                    case DNSConstants.TYPE_TXT:
+                    case DNSConstants.TYPE_SRV:
+                        known = true;
+                        break;
+                    case DNSConstants.TYPE_HINFO:
+                        // Maybe we should do something with those
+                        known = false;
+                        break;
+                    default :
+                        logger.finer("DNSIncoming() unknown type:" + type);
+                        known = false;
+                        break;
+                }
+
+                if (known)
+                {
+                    // Index a record, if we are able to create one.
+                    int base = numRecords++ * RECORD_STRIDE;
+                    records[base + NAME] = nameOffset;
+                    records[base + TYPE] = type;
+                    records[base + CLASS] = clazz;
+                    records[base + TTL] = ttl;
+                    records[base + RDATA] = off;
+                    records[base + RDLENGTH] = len;
+                }
+                else
+                {
+                    // Addjust the numbers for the skipped record
+                    if (numRecords < numAnswers)
                     {
-                        rec.setRecordSource(source);
-                        // Add a record, if we were able to create one.
-                        answers.add(rec);
+                        numAnswers--;
                     }
                     else
                     {
-                        // Addjust the numbers for the skipped record
-                        if (answers.size() < numAnswers)
+                        if (numRecords < numAnswers + numAuthorities)
                         {
-                            numAnswers--;
+                            numAuthorities--;
                         }
                         else
                         {
-                            if (answers.size() < numAnswers + numAuthorities)
-                            {
-                                numAuthorities--;
-                            }
-                            else
+                            if (numRecords < numAnswers + numAuthorities + numAdditionals)
                             {
-                                if (answers.size() < numAnswers + numAuthorities + numAdditionals)
-                                {
-                                    numAdditionals--;
-                                }
+                                numAdditionals--;
                             }
                         }
                     }
-                    off = end;
                 }
+                off = end;
             }
         }
         catch (IOException e)
@@ -224,7 +266,7 @@ public final class DNSIncoming
         {
             throw new IOException("parser error: offset=" + off);
         }
-        return data[off] & 0xFF;
+        return data.get(off) & 0xFF;
     }
 
     private int readUnsignedShort() throws IOException
@@ -232,6 +274,11 @@ public final class DNSIncoming
         return (get(off++) << 8) + get(off++);
     }
 
+    private int readUnsignedShort(int off) throws IOException
+    {
+        return (get(off) << 8) + get(off + 1);
+    }
+
     private int readInt() throws IOException
     {
         return (readUnsignedShort() << 16) + readUnsignedShort();
@@ -239,13 +286,54 @@ public final class DNSIncoming
 
     private byte[] readBytes(int off, int len) throws IOException
     {
+        if ((off < 0) || (len < 0) || (off + len > this.len))
+        {
+            throw new IOException("parser error: offset=" + off + " length=" + len);
+        }
         byte bytes[] = new byte[len];
-        System.arraycopy(data, off, bytes, 0, len);
+        final ByteBuffer d = data.duplicate();
+        d.position(off);
+        d.get(bytes);
         return bytes;
     }
 
-    private void readUTF(StringBuffer buf, int off, int len) throws IOException
+    /**
+     * Compare the bytes at the given offset with an array, without copying
+     * them.
+     */
+    private boolean sameBytes(int off, int len, byte[] bytes)
+    {
+        if (bytes == null || bytes.length != len)
+        {
+            return false;
+        }
+        for (int i = 0; i < len; i++)
+        {
+            if (data.get(off + i) != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureChars(int capacity)
+    {
+        if (capacity > chars.length)
+        {
+            char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, newChars, 0, chars.length);
+            chars = newChars;
+        }
+    }
+
+    /**
+     * Decodes len bytes of UTF into the chars buffer, starting at position
+     * pos of the buffer. Returns the new position.
+     */
+    private int readUTF(int pos, int off, int len) throws IOException
     {
+        ensureChars(pos + len);
         for (int end = off + len; off < end;)
         {
             int ch = get(off++);
@@ -275,24 +363,25 @@ public final class DNSIncoming
                     ch = ((ch & 0x3F) << 4) | (get(off++) & 0x0f);
                     break;
             }
-            buf.append((char) ch);
+            chars[pos++] = (char) ch;
         }
+        return pos;
     }
 
-    private String readNonNameString() throws IOException
+    private String readNonNameString(int off) throws IOException
     {
-        StringBuffer buf = new StringBuffer();
-        int off = this.off;
         int len = get(off++);
-        readUTF(buf, off, len);
-
-        return buf.toString();
+        int end = readUTF(0, off, len);
+        return new String(chars, 0, end);
     }
-    
-    private String readName() throws IOException
+
+    /**
+     * Walks over the name at the given offset, and returns the offset
+     * following it. This validates the labels and the compression pointers
+     * of the name, so that it can be decoded later on.
+     */
+    private int skipName(int off) throws IOException
     {
-        StringBuffer buf = new StringBuffer();
-        int off = this.off;
         int next = -1;
         int first = off;
 
@@ -306,13 +395,13 @@ public final class DNSIncoming
             switch (len & 0xC0)
             {
                 case 0x00:
-                    //buf.append("[" + off + "]");
-                    readUTF(buf, off, len);
                     off += len;
-                    buf.append('.');
+                    if (off > this.len)
+                    {
+                        throw new IOException("parser error: label ends at offset=" + off);
+                    }
                     break;
                 case 0xC0:
-                    //buf.append("<" + (off - 1) + ">");
                     if (next < 0)
                     {
                         next = off + 1;
@@ -330,8 +419,327 @@ public final class DNSIncoming
                     throw new IOException("unsupported dns label type: '" + Integer.toHexString(len & 0xC0) +"' at " + (off-1));
             }
         }
-        this.off = (next >= 0) ? next : off;
-        return buf.toString();
+        return (next >= 0) ? next : off;
+    }
+
+    private String readName(int off) throws IOException
+    {
+        return readName(0, off);
+    }
+
+    /**
+     * Decodes the name at the given offset into the chars buffer, starting at
+     * position pos of the buffer. Names are memoized by offset.
+     */
+    private String readName(int pos, int off) throws IOException
+    {
+        String name = lookupName(off);
+        if (name != null)
+        {
+            ensureChars(pos + name.length());
+            name.getChars(0, name.length(), chars, pos);
+            return name;
+        }
+
+        int start = pos;
+        int first = off;
+        boolean done = false;
+        while (!done)
+        {
+            int len = get(off++);
+            if (len == 0)
+            {
+                break;
+            }
+            switch (len & 0xC0)
+            {
+                case 0x00:
+                    pos = readUTF(pos, off, len);
+                    off += len;
+                    ensureChars(pos + 1);
+                    chars[pos++] = '.';
+                    break;
+                case 0xC0:
+                    // The remainder of the name is a name of its own.
+                    int next = ((len & 0x3F) << 8) | get(off);
+                    if (next >= first)
+                    {
+                        throw new IOException("bad domain name: possible circular name detected." +
+                                " name start: " + first +
+                                " bad offset: 0x" + Integer.toHexString(next));
+                    }
+                    String suffix = readName(pos, next);
+                    if (pos == start)
+                    {
+                        name = suffix;
+                    }
+                    pos += suffix.length();
+                    done = true;
+                    break;
+                default:
+                    throw new IOException("unsupported dns label type: '" + Integer.toHexString(len & 0xC0) +"' at " + (off-1));
+            }
+        }
+        if (name == null)
+        {
+            name = DNSNameTable.getEntry(chars, start, pos - start).name;
+        }
+        storeName(first, name);
+        return name;
+    }
+
+    /**
+     * Compares the name at the given offset with a string, without creating
+     * any objects.
+     */
+    private boolean sameName(int off, String name) throws IOException
+    {
+        String decoded = lookupName(off);
+        if (decoded != null)
+        {
+            return decoded.equals(name);
+        }
+        int pos = 0;
+        int first = off;
+        int nameLength = name.length();
+        while (true)
+        {
+            int len = get(off++);
+            if (len == 0)
+            {
+                return pos == nameLength;
+            }
+            switch (len & 0xC0)
+            {
+                case 0x00:
+                    int end = readUTF(0, off, len);
+                    off += len;
+                    if (pos + end + 1 > nameLength)
+                    {
+                        return false;
+                    }
+                    for (int i = 0; i < end; i++)
+                    {
+                        if (chars[i] != name.charAt(pos++))
+                        {
+                            return false;
+                        }
+                    }
+                    if (name.charAt(pos++) != '.')
+                    {
+                        return false;
+                    }
+                    break;
+                case 0xC0:
+                    int next = ((len & 0x3F) << 8) | get(off);
+                    if (next >= first)
+                    {
+                        return false;
+                    }
+                    off = first = next;
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private String lookupName(int off)
+    {
+        for (int i = 0; i < numNames; i++)
+        {
+            if (nameOffsets[i] == off)
+            {
+                return names[i];
+            }
+        }
+        return null;
+    }
+
+    private void storeName(int off, String name)
+    {
+        if (names == null)
+        {
+            nameOffsets = new int[16];
+            names = new String[16];
+        }
+        else
+        {
+            if (numNames == names.length)
+            {
+                int[] newOffsets = new int[numNames * 2];
+                String[] newNames = new String[numNames * 2];
+                System.arraycopy(nameOffsets, 0, newOffsets, 0, numNames);
+                System.arraycopy(names, 0, newNames, 0, numNames);
+                nameOffsets = newOffsets;
+                names = newNames;
+            }
+        }
+        nameOffsets[numNames] = off;
+        names[numNames++] = name;
+    }
+
+    /**
+     * Creates the DNSRecord for the record with the given index.
+     */
+    private DNSRecord readRecord(int index) throws IOException
+    {
+        int base = index * RECORD_STRIDE;
+        String domain = readName(records[base + NAME]);
+        int type = records[base + TYPE];
+        int clazz = records[base + CLASS];
+        int ttl = records[base + TTL];
+        int off = records[base + RDATA];
+        int len = records[base + RDLENGTH];
+        DNSRecord rec = null;
+
+        switch (type)
+        {
+            case DNSConstants.TYPE_A:		// IPv4
+            case DNSConstants.TYPE_AAAA:	// IPv6 FIXME [PJYF Oct 14 2004] This has not been tested
+                rec = new DNSRecord.Address(domain, type, clazz, ttl, readBytes(off, len));
+                break;
+            case DNSConstants.TYPE_CNAME:
+            case DNSConstants.TYPE_PTR:
+                String service = "";
+                try {
+                    service = readName(off);
+                } catch (IOException e){
+                    // there was a problem reading the service name
+                    logger.log(Level.WARNING, "readRecord() pointer name ", e);
+                }
+                rec = new DNSRecord.Pointer(domain, type, clazz, ttl, service);
+                break;
+            case DNSConstants.TYPE_TXT:
+                rec = new DNSRecord.Text(domain, type, clazz, ttl, readBytes(off, len));
+                break;
+            case DNSConstants.TYPE_SRV:
+                int priority = readUnsignedShort(off);
+                int weight = readUnsignedShort(off + 2);
+                int port = readUnsignedShort(off + 4);
+                String target = "";
+                try {
+                    // This is a hack to handle a bug in the BonjourConformanceTest
+                    // It is sending out target strings that don't follow the "domain name"
+                    // format.
+
+                    if(USE_DOMAIN_NAME_FORMAT_FOR_SRV_TARGET){
+                        target = readName(off + 6);
+                    } else {
+                        target = readNonNameString(off + 6);
+                    }
+                } catch (IOException e) {
+                    // this can happen if the type of the label
+                    // cannot be handled.
+                    logger.log(Level.WARNING, "readRecord() service target ", e);
+                }
+                rec = new DNSRecord.Service(domain, type, clazz, ttl,
+                    priority, weight, port, target);
+                break;
+        }
+        rec.resetTTL(ttl, receivedTime);
+        rec.setRecordSource(source);
+        return rec;
+    }
+
+    /**
+     * A flyweight view of a record of this message. A view is positioned on
+     * a record with <code>moveTo(index)</code>. Reading the name of the record
+     * creates at most one String per distinct name in the message. No other
+     * objects are created until the record is materialized with
+     * <code>getRecord()</code>.
+     */
+    final class RecordView
+    {
+        private int index;
+        private int base;
+
+        /**
+         * Positions the view on the record with the given index.
+         */
+        void moveTo(int index)
+        {
+            this.index = index;
+            this.base = index * RECORD_STRIDE;
+        }
+
+        String getName() throws IOException
+        {
+            return readName(records[base + NAME]);
+        }
+
+        int getType()
+        {
+            return records[base + TYPE];
+        }
+
+        int getClazz()
+        {
+            return records[base + CLASS] & DNSConstants.CLASS_MASK;
+        }
+
+        int getTtl()
+        {
+            return records[base + TTL];
+        }
+
+        long getReceivedTime()
+        {
+            return receivedTime;
+        }
+
+        /**
+         * Same as <code>DNSRecord.isExpired(now)</code> for the record.
+         */
+        boolean isExpired(long now)
+        {
+            return receivedTime + getTtl() * 1000L <= now;
+        }
+
+        boolean sameBytes(byte[] bytes)
+        {
+            return DNSIncoming.this.sameBytes(records[base + RDATA], records[base + RDLENGTH], bytes);
+        }
+
+        boolean sameName(int rdataOffset, String name) throws IOException
+        {
+            return DNSIncoming.this.sameName(records[base + RDATA] + rdataOffset, name);
+        }
+
+        int readUnsignedShort(int rdataOffset) throws IOException
+        {
+            return DNSIncoming.this.readUnsignedShort(records[base + RDATA] + rdataOffset);
+        }
+
+        /**
+         * Returns the DNSRecord for the record. If all the records have
+         * already been materialized, the existing instance is returned.
+         */
+        DNSRecord getRecord() throws IOException
+        {
+            if (answers != null)
+            {
+                return (DNSRecord) answers.get(index);
+            }
+            return readRecord(index);
+        }
+    }
+
+    /**
+     * Returns a new flyweight view of the records of this message. The view
+     * is only valid for messages which have not been appended to.
+     */
+    RecordView getRecordView()
+    {
+        return new RecordView();
+    }
+
+    /**
+     * Returns the number of records which can be viewed through a RecordView.
+     */
+    int getNumberOfRecords()
+    {
+        return numRecords;
     }
 
     /**
@@ -345,8 +753,18 @@ public final class DNSIncoming
         {
             buf.append("    ques:" + iterator.next() + "\n");
         }
+        List records;
+        try
+        {
+            records = getAnswers();
+        }
+        catch (IOException e)
+        {
+            buf.append("    " + e + "\n");
+            records = Collections.EMPTY_LIST;
+        }
         int count = 0;
-        for (Iterator iterator = answers.iterator(); iterator.hasNext(); count++)
+        for (Iterator iterator = records.iterator(); iterator.hasNext(); count++)
         {
             if (count < numAnswers)
             {
@@ -367,7 +785,7 @@ public final class DNSIncoming
         }
         if (dump)
         {
-            for (int off = 0, len = packet.getLength(); off < len; off += 32)
+            for (int off = 0, len = this.len; off < len; off += 32)
             {
                 int n = Math.min(32, len - off);
                 if (off < 10)
@@ -386,8 +804,8 @@ public final class DNSIncoming
                     {
                         buf.append(' ');
                     }
-                    buf.append(Integer.toHexString((data[off + i] & 0xF0) >> 4));
-                    buf.append(Integer.toHexString((data[off + i] & 0x0F) >> 0));
+                    buf.append(Integer.toHexString((data.get(off + i) & 0xF0) >> 4));
+                    buf.append(Integer.toHexString((data.get(off + i) & 0x0F) >> 0));
                 }
                 buf.append("\n");
                 buf.append("    ");
@@ -398,7 +816,7 @@ public final class DNSIncoming
                         buf.append(' ');
                     }
                     buf.append(' ');
-                    int ch = data[off + i] & 0xFF;
+                    int ch = data.get(off + i) & 0xFF;
                     buf.append(((ch > ' ') && (ch < 127)) ? (char) ch : '.');
                 }
                 buf.append("\n");
@@ -418,14 +836,14 @@ public final class DNSIncoming
     {
         StringBuffer buf = new StringBuffer();
         buf.append(isQuery() ? "dns[query," : "dns[response,");
-        if (packet.getAddress() != null)
+        if (source != null)
         {
-            buf.append(packet.getAddress().getHostAddress());
+            buf.append(source.getHostAddress());
         }
         buf.append(':');
-        buf.append(packet.getPort());
+        buf.append(port);
         buf.append(",len=");
-        buf.append(packet.getLength());
+        buf.append(len);
         buf.append(",id=0x");
         buf.append(Integer.toHexString(id));
         if (flags != 0)
@@ -474,36 +892,35 @@ public final class DNSIncoming
      *
      * @throws IllegalArgumentException If not a query or if Truncated.
      */
-    void append(DNSIncoming that)
+    void append(DNSIncoming that) throws IOException
     {
         if (this.isQuery() && this.isTruncated() && that.isQuery())
         {
             if (that.numQuestions > 0) {
                 if (Collections.EMPTY_LIST.equals(this.questions))
-                    this.questions = Collections.synchronizedList(new ArrayList(that.numQuestions));
+                    this.questions = new ArrayList(that.numQuestions);
 
                 this.questions.addAll(that.questions);
                 this.numQuestions += that.numQuestions;
             }
-            
-            if (Collections.EMPTY_LIST.equals(answers))
-            {
-                answers = Collections.synchronizedList(new ArrayList());
-            }
+
+            List answers = this.getAnswers();
+            List thatAnswers = that.getAnswers();
+            knownAnswers = null;
 
             if (that.numAnswers > 0)
             {
-                this.answers.addAll(this.numAnswers, that.answers.subList(0, that.numAnswers));
+                answers.addAll(this.numAnswers, thatAnswers.subList(0, that.numAnswers));
                 this.numAnswers += that.numAnswers;
             }
             if (that.numAuthorities > 0)
             {
-                this.answers.addAll(this.numAnswers + this.numAuthorities, that.answers.subList(that.numAnswers, that.numAnswers + that.numAuthorities));
+                answers.addAll(this.numAnswers + this.numAuthorities, thatAnswers.subList(that.numAnswers, that.numAnswers + that.numAuthorities));
                 this.numAuthorities += that.numAuthorities;
             }
             if (that.numAdditionals > 0)
             {
-                this.answers.addAll(that.answers.subList(that.numAnswers + that.numAuthorities, that.numAnswers + that.numAuthorities + that.numAdditionals));
+                answers.addAll(thatAnswers.subList(that.numAnswers + that.numAuthorities, that.numAnswers + that.numAuthorities + that.numAdditionals));
                 this.numAdditionals += that.numAdditionals;
             }
         }
@@ -523,8 +940,44 @@ public final class DNSIncoming
         return questions;
     }
 
-    public List getAnswers()
+    /**
+     * Returns the answers, authorities and additionals of this message. The
+     * records are materialized on the first call.
+     */
+    public List getAnswers() throws IOException
     {
+        if (answers == null)
+        {
+            List list = new ArrayList(numRecords);
+            for (int i = 0; i < numRecords; i++)
+            {
+                list.add(readRecord(i));
+            }
+            answers = list;
+        }
         return answers;
     }
+
+    /**
+     * True if a record is suppressed by the known answers of this query. The
+     * known answers are collected on the first call, so that each record is
+     * checked in constant time. A message whose records can not be read
+     * suppresses nothing, it is rejected when its answers are handled.
+     */
+    public synchronized boolean suppresses(DNSRecord rec)
+    {
+        if (knownAnswers == null)
+        {
+            try
+            {
+                knownAnswers = (numAnswers > 0) ? new KnownAnswers(getAnswers(), numAnswers) : KnownAnswers.EMPTY;
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.FINER, "suppresses() malformed known answers ", e);
+                return false;
+            }
+        }
+        return knownAnswers.suppresses(rec);
+    }
 }
@@ -0,0 +1,268 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The DNSListener's of a JmDNS instance, indexed by the name of the question
+ * they were added with.
+ * <p/>
+ * A record is only delivered to the listeners whose question has the name
+ * and the type of the record, or the type ANY. Listeners added without a
+ * question receive all records. The listeners of a name are kept in an
+ * immutable array, which is replaced when a listener is added or removed, so
+ * that delivering a record neither locks nor copies anything.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class DNSListenerRegistry
+{
+    private final static Registration[] EMPTY = new Registration[0];
+
+    /**
+     * Keys are lower case names, values are arrays of Registration's.
+     */
+    private final Map byName = new ConcurrentHashMap();
+
+    /**
+     * Listeners which receive all the records.
+     */
+    private volatile Registration[] wildcards = EMPTY;
+
+    /**
+     * Keys are listeners, values are lists of the names under which they are
+     * registered. Guarded by this.
+     */
+    private final Map names = new IdentityHashMap();
+
+    private static final class Registration
+    {
+        final DNSListener listener;
+        final int type;
+
+        Registration(DNSListener listener, int type)
+        {
+            this.listener = listener;
+            this.type = type;
+        }
+
+        boolean matches(DNSRecord rec)
+        {
+            return type == DNSConstants.TYPE_ANY || type == rec.type;
+        }
+    }
+
+    /**
+     * Adds a listener for the records answering a question, or for all the
+     * records if the question is null.
+     */
+    synchronized void add(DNSListener listener, DNSQuestion question)
+    {
+        if (question == null)
+        {
+            if (remove(wildcards, listener) == wildcards)
+            {
+                wildcards = add(wildcards, new Registration(listener, DNSConstants.TYPE_ANY));
+                record(listener, null);
+            }
+            return;
+        }
+        final String key = question.getKey();
+        final Registration[] current = (Registration[]) byName.get(key);
+        if (current != null)
+        {
+            for (int i = 0; i < current.length; i++)
+            {
+                if (current[i].listener == listener && current[i].type == question.type)
+                {
+                    return;
+                }
+            }
+        }
+        byName.put(key, add((current != null) ? current : EMPTY, new Registration(listener, question.type)));
+        record(listener, key);
+    }
+
+    /**
+     * Adds a question to a listener, if the listener is registered.
+     */
+    synchronized void addIfRegistered(DNSListener listener, DNSQuestion question)
+    {
+        if (names.containsKey(listener))
+        {
+            add(listener, question);
+        }
+    }
+
+    /**
+     * Removes a question from a listener. The listener stays registered.
+     */
+    synchronized void remove(DNSListener listener, DNSQuestion question)
+    {
+        final String key = question.getKey();
+        final Registration[] current = (Registration[]) byName.get(key);
+        if (current == null)
+        {
+            return;
+        }
+        int count = 0;
+        boolean other = false;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i].listener != listener || current[i].type != question.type)
+            {
+                count++;
+                other |= current[i].listener == listener;
+            }
+        }
+        if (count == current.length)
+        {
+            return;
+        }
+        if (count == 0)
+        {
+            byName.remove(key);
+        }
+        else
+        {
+            final Registration[] updated = new Registration[count];
+            for (int i = 0, j = 0; i < current.length; i++)
+            {
+                if (current[i].listener != listener || current[i].type != question.type)
+                {
+                    updated[j++] = current[i];
+                }
+            }
+            byName.put(key, updated);
+        }
+        if (!other)
+        {
+            final List keys = (List) names.get(listener);
+            if (keys != null)
+            {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes a listener from all its questions.
+     */
+    synchronized void remove(DNSListener listener)
+    {
+        final List keys = (List) names.remove(listener);
+        if (keys == null)
+        {
+            return;
+        }
+        for (int i = 0, n = keys.size(); i < n; i++)
+        {
+            final String key = (String) keys.get(i);
+            if (key == null)
+            {
+                wildcards = remove(wildcards, listener);
+            }
+            else
+            {
+                final Registration[] current = (Registration[]) byName.get(key);
+                if (current != null)
+                {
+                    final Registration[] updated = remove(current, listener);
+                    if (updated.length == 0)
+                    {
+                        byName.remove(key);
+                    }
+                    else
+                    {
+                        byName.put(key, updated);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers a record to the listeners it is of interest to.
+     */
+    void updateRecord(JmDNSImpl jmdns, long now, DNSRecord rec)
+    {
+        final Registration[] named = (Registration[]) byName.get(rec.getKey());
+        if (named != null)
+        {
+            for (int i = 0; i < named.length; i++)
+            {
+                if (named[i].matches(rec))
+                {
+                    named[i].listener.updateRecord(jmdns, now, rec);
+                }
+            }
+        }
+        final Registration[] all = wildcards;
+        for (int i = 0; i < all.length; i++)
+        {
+            all[i].listener.updateRecord(jmdns, now, rec);
+        }
+    }
+
+    /**
+     * Returns the number of registered listeners.
+     */
+    synchronized int size()
+    {
+        return names.size();
+    }
+
+    private void record(DNSListener listener, String key)
+    {
+        List keys = (List) names.get(listener);
+        if (keys == null)
+        {
+            keys = new ArrayList(2);
+            names.put(listener, keys);
+        }
+        if (!keys.contains(key))
+        {
+            keys.add(key);
+        }
+    }
+
+    private static Registration[] add(Registration[] current, Registration registration)
+    {
+        final Registration[] updated = new Registration[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = registration;
+        return updated;
+    }
+
+    private static Registration[] remove(Registration[] current, DNSListener listener)
+    {
+        int count = 0;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i].listener != listener)
+            {
+                count++;
+            }
+        }
+        if (count == current.length)
+        {
+            return current;
+        }
+        final Registration[] updated = new Registration[count];
+        for (int i = 0, j = 0; i < current.length; i++)
+        {
+            if (current[i].listener != listener)
+            {
+                updated[j++] = current[i];
+            }
+        }
+        return updated;
+    }
+}
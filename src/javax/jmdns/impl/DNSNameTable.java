@@ -0,0 +1,306 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+/**
+ * A table of canonical domain names.
+ * <p/>
+ * The same few names (service types, host names, the service enumeration
+ * name) occur in almost every packet. The parser, the cache, the listener
+ * maps and the domain name compression of outgoing messages resolve names
+ * through this table, so that equal names are usually the same String
+ * instance. This makes <code>equals</code> and <code>hashCode</code> cheap,
+ * and avoids decoding the same name into a new String, or lower casing it,
+ * over and over.
+ * <p/>
+ * The table has a fixed size and forgets names when it is full, so a name
+ * may be resolved to different instances over time. Names must therefore
+ * still be compared with <code>equals</code>, identity is only a fast path.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class DNSNameTable
+{
+    /**
+     * Number of entries of the table, must be a power of two.
+     */
+    private final static int SIZE = 2048;
+
+    /**
+     * Number of entries in a bucket, must be a power of two.
+     */
+    private final static int BUCKET = 4;
+
+    private final static Entry[] table = new Entry[SIZE];
+
+    /**
+     * Used to pick the entry which is replaced in a full bucket. Updates
+     * are not synchronized, losing one does not matter.
+     */
+    private static int victim;
+
+    private DNSNameTable()
+    {
+    }
+
+    /**
+     * A canonical name. Entries are immutable, except for the lazily
+     * resolved suffix.
+     */
+    static final class Entry
+    {
+        /**
+         * The name, as it was spelled.
+         */
+        final String name;
+
+        /**
+         * The name in lower case. Entries for names which only differ in case
+         * share the same key instance, while they are in the table.
+         */
+        final String key;
+
+        /**
+         * Case insensitive hash code of the name.
+         */
+        final int hash;
+
+        /**
+         * The first label of the name, encoded the way it is written into a
+         * message: a length byte followed by the UTF-8 bytes.
+         */
+        final byte[] label;
+
+        /**
+         * Hash code of the encoded label.
+         */
+        final int labelHash;
+
+        /**
+         * The name without its first label, or null if not resolved yet.
+         */
+        private Entry suffix;
+
+        Entry(String name, String key, int hash)
+        {
+            this.name = name;
+            this.key = key;
+            this.hash = hash;
+            this.label = encodeLabel(name, getLabelLength());
+            int h = 0;
+            for (int i = 0; i < label.length; i++)
+            {
+                h = 31 * h + label[i];
+            }
+            this.labelHash = h;
+        }
+
+        /**
+         * Returns the length of the first label of the name.
+         */
+        int getLabelLength()
+        {
+            int n = name.indexOf('.');
+            return (n < 0) ? name.length() : n;
+        }
+
+        /**
+         * Returns the entry for the name without its first label, or null if
+         * the name has only one label.
+         */
+        Entry getSuffix()
+        {
+            Entry result = suffix;
+            if (result == null)
+            {
+                int n = name.indexOf('.');
+                if (n < 0 || n + 1 >= name.length())
+                {
+                    return null;
+                }
+                result = getEntry(name, n + 1);
+                suffix = result;
+            }
+            return result;
+        }
+
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a name.
+     */
+    static String getName(String name)
+    {
+        return getEntry(name, 0).name;
+    }
+
+    /**
+     * Returns the canonical lower case instance of a name. This replaces
+     * <code>name.toLowerCase()</code> for lookups in maps keyed by name.
+     */
+    static String getKey(String name)
+    {
+        return getEntry(name, 0).key;
+    }
+
+    /**
+     * Returns the entry of a name.
+     */
+    static Entry getEntry(String name)
+    {
+        return getEntry(name, 0);
+    }
+
+    /**
+     * Returns the entry of the part of a name which starts at the given
+     * offset.
+     */
+    static Entry getEntry(String name, int offset)
+    {
+        int length = name.length() - offset;
+        int hash = 0;
+        for (int i = offset, end = name.length(); i < end; i++)
+        {
+            hash = 31 * hash + fold(name.charAt(i));
+        }
+        int base = (hash ^ (hash >>> 16)) & (SIZE - BUCKET);
+        for (int i = 0; i < BUCKET; i++)
+        {
+            Entry entry = table[base + i];
+            if (entry != null && entry.hash == hash && entry.name.length() == length && entry.name.regionMatches(0, name, offset, length))
+            {
+                return entry;
+            }
+        }
+        return add(base, hash, (offset == 0) ? name : name.substring(offset));
+    }
+
+    /**
+     * Returns the entry of a name decoded into a char buffer. No String is
+     * created if the name is in the table.
+     */
+    static Entry getEntry(char[] chars, int offset, int length)
+    {
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            hash = 31 * hash + fold(chars[i]);
+        }
+        int base = (hash ^ (hash >>> 16)) & (SIZE - BUCKET);
+        for (int i = 0; i < BUCKET; i++)
+        {
+            Entry entry = table[base + i];
+            if (entry != null && entry.hash == hash && sameChars(entry.name, chars, offset, length))
+            {
+                return entry;
+            }
+        }
+        return add(base, hash, new String(chars, offset, length));
+    }
+
+    private static boolean sameChars(String name, char[] chars, int offset, int length)
+    {
+        if (name.length() != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (name.charAt(i) != chars[offset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Entry add(int base, int hash, String name)
+    {
+        // Share the key with a differently spelled name, if there is one.
+        String key = name.toLowerCase();
+        int free = -1;
+        for (int i = 0; i < BUCKET; i++)
+        {
+            Entry entry = table[base + i];
+            if (entry == null)
+            {
+                free = base + i;
+            }
+            else
+            {
+                if (entry.hash == hash && entry.key.equals(key))
+                {
+                    key = entry.key;
+                }
+            }
+        }
+        Entry entry = new Entry(name, key, hash);
+        if (free < 0)
+        {
+            free = base + (victim++ & (BUCKET - 1));
+        }
+        table[free] = entry;
+        return entry;
+    }
+
+    /**
+     * Encodes the first characters of a name as a label, in the same way as
+     * <code>DNSOutgoing.writeUTF</code>.
+     */
+    private static byte[] encodeLabel(String name, int len)
+    {
+        int utflen = 0;
+        for (int i = 0; i < len; i++)
+        {
+            int ch = name.charAt(i);
+            if ((ch >= 0x0001) && (ch <= 0x007F))
+            {
+                utflen += 1;
+            }
+            else
+            {
+                utflen += (ch > 0x07FF) ? 3 : 2;
+            }
+        }
+        byte[] label = new byte[utflen + 1];
+        int off = 0;
+        label[off++] = (byte) utflen;
+        for (int i = 0; i < len; i++)
+        {
+            int ch = name.charAt(i);
+            if ((ch >= 0x0001) && (ch <= 0x007F))
+            {
+                label[off++] = (byte) ch;
+            }
+            else
+            {
+                if (ch > 0x07FF)
+                {
+                    label[off++] = (byte) (0xE0 | ((ch >> 12) & 0x0F));
+                    label[off++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                    label[off++] = (byte) (0x80 | ((ch >> 0) & 0x3F));
+                }
+                else
+                {
+                    label[off++] = (byte) (0xC0 | ((ch >> 6) & 0x1F));
+                    label[off++] = (byte) (0x80 | ((ch >> 0) & 0x3F));
+                }
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Folds ASCII upper case letters into lower case, for hashing.
+     */
+    private static int fold(char ch)
+    {
+        return (ch >= 'A' && ch <= 'Z') ? ch + ('a' - 'A') : ch;
+    }
+}
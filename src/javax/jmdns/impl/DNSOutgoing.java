@@ -6,9 +6,12 @@
 package javax.jmdns.impl;
 
 import java.io.IOException;
-import java.util.Hashtable;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
-import java.util.logging.Level;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -24,6 +27,14 @@ public final class DNSOutgoing
      * tracking problems interacting with other mdns implementations.
      */
     public static boolean USE_DOMAIN_NAME_COMPRESSION = true;
+
+    /**
+     * The maximum number of released messages kept for reuse.
+     */
+    public static int MAX_POOLED = 16;
+
+    private final static ConcurrentLinkedQueue pool = new ConcurrentLinkedQueue();
+    private final static AtomicInteger pooled = new AtomicInteger();
     
     private static Logger logger = Logger.getLogger(DNSOutgoing.class.getName());
     int id;
@@ -33,12 +44,27 @@ public final class DNSOutgoing
     private int numAnswers;
     private int numAuthorities;
     private int numAdditionals;
-    private Hashtable names;
+    private final CompressionTable names = new CompressionTable();
+
+    /**
+     * The labels of the name being written.
+     */
+    private DNSNameTable.Entry[] path = new DNSNameTable.Entry[16];
+
+    /**
+     * The size a message is allowed to grow to. The buffer is larger, so that
+     * a record can be written before it is known whether it fits.
+     */
+    private final int maxSize = DNSConstants.MAX_MSG_TYPICAL;
 
     byte data[];
     int off;
     int len;
 
+    private DatagramPacket packet;
+    private ByteBuffer buffer;
+    private boolean released;
+
     /**
      * Create an outgoing multicast query or response.
      */
@@ -54,22 +80,115 @@ public final class DNSOutgoing
     {
         this.flags = flags;
         this.multicast = multicast;
-        names = new Hashtable();
-        data = new byte[DNSConstants.MAX_MSG_TYPICAL];
+        data = new byte[DNSConstants.MAX_MSG_ABSOLUTE];
+        off = 12;
+    }
+
+    /**
+     * Takes an empty multicast query or response from the pool, or creates a
+     * new one. The message should be released once it has been sent.
+     */
+    public static DNSOutgoing obtain(int flags)
+    {
+        return obtain(flags, true);
+    }
+
+    /**
+     * Takes an empty query or response from the pool, or creates a new one.
+     * The message should be released once it has been sent.
+     */
+    public static DNSOutgoing obtain(int flags, boolean multicast)
+    {
+        final DNSOutgoing out = (DNSOutgoing) pool.poll();
+        if (out == null)
+        {
+            return new DNSOutgoing(flags, multicast);
+        }
+        pooled.decrementAndGet();
+        out.reset();
+        out.flags = flags;
+        out.multicast = multicast;
+        return out;
+    }
+
+    /**
+     * Gives the message back to the pool. The message must not be used
+     * afterwards. Releasing a message more than once has no effect.
+     */
+    public void release()
+    {
+        if (released)
+        {
+            return;
+        }
+        released = true;
+        if (pooled.incrementAndGet() <= MAX_POOLED)
+        {
+            pool.offer(this);
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the questions and records of the message, keeping its flags.
+     */
+    public void reset()
+    {
+        id = 0;
+        numQuestions = 0;
+        numAnswers = 0;
+        numAuthorities = 0;
+        numAdditionals = 0;
+        names.clear();
+        authorativeAnswers.clear();
         off = 12;
+        len = 0;
+        released = false;
     }
 
     /**
      * Add a question to the message.
      */
     public void addQuestion(DNSQuestion rec) throws IOException
+    {
+        if (!offerQuestion(rec))
+        {
+            throw new IOException("buffer full");
+        }
+    }
+
+    /**
+     * Add a question to the message, if there is room for it.
+     *
+     * @return false if the message is full, the message is then unchanged
+     */
+    public boolean offerQuestion(DNSQuestion rec)
     {
         if (numAnswers > 0 || numAuthorities > 0 || numAdditionals > 0)
         {
             throw new IllegalStateException("Questions must be added before answers");
         }
+        final int save = off;
+        try
+        {
+            writeQuestion(rec);
+        }
+        catch (IOException e)
+        {
+            // larger than the buffer
+            rollback(save);
+            return false;
+        }
+        if (off > maxSize)
+        {
+            rollback(save);
+            return false;
+        }
         numQuestions++;
-        writeQuestion(rec);
+        return true;
     }
 
     /**
@@ -92,49 +211,106 @@ public final class DNSOutgoing
      */
     void addAdditionalAnswer(DNSIncoming in, DNSRecord rec) throws IOException
     {
-        if ((off < DNSConstants.MAX_MSG_TYPICAL - 200) && !rec.suppressedBy(in))
+        if (!rec.suppressedBy(in))
         {
-            writeRecord(rec, 0);
-            numAdditionals++;
+            offerAdditionalAnswer(rec);
         }
     }
 
     /**
      * Add an answer to the message.
+     *
+     * @throws IOException if there is no room for the answer
      */
     public void addAnswer(DNSRecord rec, long now) throws IOException
+    {
+        if (!offerAnswer(rec, now))
+        {
+            throw new IOException("buffer full");
+        }
+    }
+
+    /**
+     * Add an answer to the message, if there is room for it.
+     *
+     * @return false if the message is full, the message is then unchanged
+     */
+    public boolean offerAnswer(DNSRecord rec, long now)
     {
         if (numAuthorities > 0 || numAdditionals > 0)
         {
-            throw new IllegalStateException("Questions must be added before answers");
+            throw new IllegalStateException("Answers must be added before authorities and additionals");
         }
         if (rec != null)
         {
             if ((now == 0) || !rec.isExpired(now))
             {
-                writeRecord(rec, now);
+                if (!appendRecord(rec, now))
+                {
+                    return false;
+                }
                 numAnswers++;
             }
         }
+        return true;
+    }
+
+    /**
+     * Add an additional answer to the message, if there is room for it.
+     *
+     * @return false if the message is full, the message is then unchanged
+     */
+    public boolean offerAdditionalAnswer(DNSRecord rec)
+    {
+        if (!appendRecord(rec, 0))
+        {
+            return false;
+        }
+        numAdditionals++;
+        return true;
+    }
+
+    /**
+     * Returns the number of answers and additional answers in the message.
+     */
+    public int getNumberOfRecords()
+    {
+        return numAnswers + numAuthorities + numAdditionals;
     }
 
     private LinkedList authorativeAnswers = new LinkedList();
 
     /**
      * Add an authorative answer to the message.
+     *
+     * @throws IOException if there is no room for the answer
      */
     public void addAuthorativeAnswer(DNSRecord rec) throws IOException
+    {
+        if (!offerAuthorativeAnswer(rec))
+        {
+            throw new IOException("buffer full");
+        }
+    }
+
+    /**
+     * Add an authorative answer to the message, if there is room for it.
+     *
+     * @return false if the message is full, the message is then unchanged
+     */
+    public boolean offerAuthorativeAnswer(DNSRecord rec)
     {
         if (numAdditionals > 0)
         {
             throw new IllegalStateException("Authorative answers must be added before additional answers");
         }
+        if (!appendRecord(rec, 0))
+        {
+            return false;
+        }
         authorativeAnswers.add(rec);
-        writeRecord(rec, 0);
         numAuthorities++;
-
-        // VERIFY:
-
+        return true;
     }
 
     void writeByte(int value) throws IOException
@@ -239,42 +415,80 @@ public final class DNSOutgoing
     
     void writeName(String name, boolean useCompression) throws IOException
     {
-        while (true)
+        // The labels of the name, from the name table, which also holds
+        // their encoded bytes.
+        int n = 0;
+        for (DNSNameTable.Entry entry = DNSNameTable.getEntry(name); entry != null && entry.getLabelLength() > 0; entry = entry.getSuffix())
         {
-            int n = name.indexOf('.');
-            if (n < 0)
+            if (n == path.length)
             {
-                n = name.length();
+                DNSNameTable.Entry[] grown = new DNSNameTable.Entry[n * 2];
+                System.arraycopy(path, 0, grown, 0, n);
+                path = grown;
             }
-            if (n <= 0)
+            path[n++] = entry;
+        }
+
+        // Find the longest suffix already written, from the last label on.
+        boolean compress = useCompression && USE_DOMAIN_NAME_COMPRESSION;
+        int node = CompressionTable.ROOT;
+        int unmatched = n;
+        if (compress)
+        {
+            while (unmatched > 0)
             {
-                writeByte(0);
-                return;
-            }
-            if(useCompression && USE_DOMAIN_NAME_COMPRESSION){
-                Integer offset = (Integer) names.get(name);
-                if (offset != null)
+                DNSNameTable.Entry entry = path[unmatched - 1];
+                int child = names.find(node, entry.label, entry.labelHash);
+                if (child < 0)
                 {
-                    int val = offset.intValue();
-
-                    if (val > off)
-                    {
-                        logger.log(Level.WARNING, "DNSOutgoing writeName failed val=" + val + " name=" + name);
-                    }
-
-                    writeByte((val >> 8) | 0xC0);
-                    writeByte(val & 0xFF);
-                    return;
+                    break;
                 }
-                names.put(name, new Integer(off));
+                node = child;
+                unmatched--;
             }
-            writeUTF(name, 0, n);
-            name = name.substring(n);
-            if (name.startsWith("."))
+        }
+
+        // Write the other labels, and remember where their suffixes start.
+        int length = (node == CompressionTable.ROOT) ? 1 : 2;
+        for (int i = 0; i < unmatched; i++)
+        {
+            length += path[i].label.length;
+        }
+        if (off + length > data.length)
+        {
+            throw new IOException("buffer full");
+        }
+        if (compress)
+        {
+            int parent = node;
+            int start = off + length - ((node == CompressionTable.ROOT) ? 1 : 2);
+            for (int i = unmatched - 1; i >= 0; i--)
             {
-                name = name.substring(1);
+                DNSNameTable.Entry entry = path[i];
+                start -= entry.label.length;
+                parent = names.add(parent, entry.label, entry.labelHash, start);
             }
         }
+        for (int i = 0; i < unmatched; i++)
+        {
+            byte[] label = path[i].label;
+            System.arraycopy(label, 0, data, off, label.length);
+            off += label.length;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            path[i] = null;
+        }
+        if (node == CompressionTable.ROOT)
+        {
+            data[off++] = 0;
+        }
+        else
+        {
+            int val = names.getOffset(node);
+            data[off++] = (byte) ((val >> 8) | 0xC0);
+            data[off++] = (byte) (val & 0xFF);
+        }
     }
 
     void writeQuestion(DNSQuestion question) throws IOException
@@ -286,25 +500,59 @@ public final class DNSOutgoing
 
     void writeRecord(DNSRecord rec, long now) throws IOException
     {
-        int save = off;
+        if (!appendRecord(rec, now))
+        {
+            throw new IOException("buffer full");
+        }
+    }
+
+    /**
+     * Writes a record, if it fits in the message.
+     *
+     * @return false if the record does not fit, the message is then unchanged
+     */
+    private boolean appendRecord(DNSRecord rec, long now)
+    {
+        final int save = off;
         try
         {
-            writeName(rec.name);
-            writeShort(rec.type);
-            writeShort(rec.clazz | ((rec.unique && multicast) ? DNSConstants.CLASS_UNIQUE : 0));
-            writeInt((now == 0) ? rec.getTtl() : rec.getRemainingTTL(now));
-            writeShort(0);
-            int start = off;
-            rec.write(this);
-            int len = off - start;
-            data[start - 2] = (byte) (len >> 8);
-            data[start - 1] = (byte) (len & 0xFF);
+            writeRecordData(rec, now);
         }
         catch (IOException e)
         {
-            off = save;
-            throw e;
+            // larger than the buffer
+            rollback(save);
+            return false;
         }
+        if (off > maxSize)
+        {
+            rollback(save);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes what has been written from an offset on.
+     */
+    private void rollback(int save)
+    {
+        off = save;
+        names.truncate(save);
+    }
+
+    private void writeRecordData(DNSRecord rec, long now) throws IOException
+    {
+        writeName(rec.name);
+        writeShort(rec.type);
+        writeShort(rec.clazz | ((rec.unique && multicast) ? DNSConstants.CLASS_UNIQUE : 0));
+        writeInt((now == 0) ? rec.getTtl() : rec.getRemainingTTL(now));
+        writeShort(0);
+        int start = off;
+        rec.write(this);
+        int len = off - start;
+        data[start - 2] = (byte) (len >> 8);
+        data[start - 1] = (byte) (len & 0xFF);
     }
 
     /**
@@ -324,6 +572,48 @@ public final class DNSOutgoing
         off = save;
     }
 
+    /**
+     * Returns a packet for sending the finished message to an address. The
+     * packet is reused by the message.
+     */
+    DatagramPacket getPacket(InetAddress addr, int port)
+    {
+        if (packet == null)
+        {
+            packet = new DatagramPacket(data, off, addr, port);
+        }
+        else
+        {
+            packet.setData(data, 0, off);
+            packet.setAddress(addr);
+            packet.setPort(port);
+        }
+        return packet;
+    }
+
+    /**
+     * Returns a buffer holding the finished message. The buffer is reused by
+     * the message.
+     */
+    ByteBuffer getBuffer()
+    {
+        if (buffer == null)
+        {
+            buffer = ByteBuffer.wrap(data);
+        }
+        buffer.limit(off).position(0);
+        return buffer;
+    }
+
+    /**
+     * Marks the message as truncated: the known answers of the query continue
+     * in the next message. (See Draft Cheshire chapter 7.2.)
+     */
+    public void setTruncated()
+    {
+        flags |= DNSConstants.FLAGS_TC;
+    }
+
     boolean isQuery()
     {
         return (flags & DNSConstants.FLAGS_QR_MASK) == DNSConstants.FLAGS_QR_QUERY;
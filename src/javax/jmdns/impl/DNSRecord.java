@@ -12,6 +12,7 @@ import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Iterator;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +34,12 @@ public abstract class DNSRecord extends DNSEntry
      */
     private InetAddress source;
 
+    /**
+     * Position of this record in the timing wheel of the DNSCache, or null
+     * if this record is not cached.
+     */
+    volatile DNSCache.Expiry expiry;
+
     /**
      * Create a DNSRecord with a name, type, clazz, and ttl.
      */
@@ -56,7 +63,7 @@ public abstract class DNSRecord extends DNSEntry
      */
     boolean sameAs(DNSRecord other)
     {
-        return super.equals(other) && sameValue((DNSRecord) other);
+        return super.equals(other) && sameValue(other);
     }
 
     /**
@@ -64,6 +71,22 @@ public abstract class DNSRecord extends DNSEntry
      */
     abstract boolean sameValue(DNSRecord other);
 
+    /**
+     * Returns a hash code of the value of this record, which is consistent
+     * with sameValue(DNSRecord).
+     */
+    abstract int valueHashCode();
+
+    /**
+     * True if this record has the same value as a record of an incoming
+     * message. Subclasses compare the value on the wire, this default
+     * implementation creates the record.
+     */
+    boolean sameValue(DNSIncoming.RecordView other) throws IOException
+    {
+        return sameValue(other.getRecord());
+    }
+
     /**
      * True if this record has the same type as some other record.
      */
@@ -98,23 +121,7 @@ public abstract class DNSRecord extends DNSEntry
      */
     boolean suppressedBy(DNSIncoming msg)
     {
-        try
-        {
-            for (int i = msg.numAnswers; i-- > 0;)
-            {
-                if (suppressedBy((DNSRecord) msg.answers.get(i)))
-                {
-                    return true;
-                }
-            }
-            return false;
-        }
-        catch (ArrayIndexOutOfBoundsException e)
-        {
-            logger.log(Level.WARNING, "suppressedBy() message " + msg + " exception ", e);
-            // msg.print(true);
-            return false;
-        }
+        return msg.suppresses(this);
     }
 
     /**
@@ -159,7 +166,7 @@ public abstract class DNSRecord extends DNSEntry
      * Check if the record is stale, ie it has outlived
      * more than half of its TTL.
      */
-    boolean isStale(long now)
+    public boolean isStale(long now)
     {
         return getExpirationTime(50) <= now;
     }
@@ -170,8 +177,21 @@ public abstract class DNSRecord extends DNSEntry
      */
     void resetTTL(DNSRecord other)
     {
-        created = other.created;
-        ttl = other.ttl;
+        resetTTL(other.ttl, other.created);
+    }
+
+    /**
+     * Reset the TTL of a record to a TTL received at the given time.
+     */
+    void resetTTL(int ttl, long created)
+    {
+        this.created = created;
+        this.ttl = ttl;
+        DNSCache.Expiry cached = expiry;
+        if (cached != null)
+        {
+            cached.reschedule();
+        }
     }
 
     /**
@@ -186,16 +206,19 @@ public abstract class DNSRecord extends DNSEntry
     {
         private static Logger logger = Logger.getLogger(Address.class.getName());
         InetAddress addr;
+        private byte[] rawAddress;
 
         Address(String name, int type, int clazz, int ttl, InetAddress addr)
         {
             super(name, type, clazz, ttl);
             this.addr = addr;
+            this.rawAddress = (addr != null) ? addr.getAddress() : null;
         }
 
         Address(String name, int type, int clazz, int ttl, byte[] rawAddress)
         {
             super(name, type, clazz, ttl);
+            this.rawAddress = rawAddress;
             try
             {
                 this.addr = InetAddress.getByAddress(rawAddress);
@@ -266,6 +289,16 @@ public abstract class DNSRecord extends DNSEntry
             return addr.equals(((Address) other).getAddress());
         }
 
+        int valueHashCode()
+        {
+            return (addr != null) ? addr.hashCode() : 0;
+        }
+
+        boolean sameValue(DNSIncoming.RecordView other)
+        {
+            return other.sameBytes(rawAddress);
+        }
+
         InetAddress getAddress()
         {
             return addr;
@@ -335,7 +368,7 @@ public abstract class DNSRecord extends DNSEntry
             DNSRecord.Address dnsAddress = dns.getLocalHost().getDNSAddressRecord(this);
             if (dnsAddress != null)
             {
-                if (dnsAddress.sameType(this) && dnsAddress.sameName(this) && (!dnsAddress.sameValue(this)))
+                if (dnsAddress.sameType(this) && dnsAddress.sameName(this) && (!dns.isLocalAddress(addr)))
                 {
                     logger.finer("handleQuery() Conflicting probe detected. dns state " + dns.getState() + " lex compare " + lexCompare(dnsAddress));
                     // Tie-breaker test
@@ -365,7 +398,7 @@ public abstract class DNSRecord extends DNSEntry
             DNSRecord.Address dnsAddress = dns.getLocalHost().getDNSAddressRecord(this);
             if (dnsAddress != null)
             {
-                if (dnsAddress.sameType(this) && dnsAddress.sameName(this) && (!dnsAddress.sameValue(this)))
+                if (dnsAddress.sameType(this) && dnsAddress.sameName(this) && (!dns.isLocalAddress(addr)))
                 {
                     logger.finer("handleResponse() Denial detected");
 
@@ -422,6 +455,16 @@ public abstract class DNSRecord extends DNSEntry
             return alias.equals(((Pointer) other).alias);
         }
 
+        int valueHashCode()
+        {
+            return alias.hashCode();
+        }
+
+        boolean sameValue(DNSIncoming.RecordView other) throws IOException
+        {
+            return other.sameName(0, alias);
+        }
+
         boolean handleQuery(JmDNSImpl dns, long expirationTime)
         {
             // Nothing to do (?)
@@ -485,6 +528,16 @@ public abstract class DNSRecord extends DNSEntry
             return true;
         }
 
+        int valueHashCode()
+        {
+            return Arrays.hashCode(text);
+        }
+
+        boolean sameValue(DNSIncoming.RecordView other)
+        {
+            return other.sameBytes(text);
+        }
+
         boolean handleQuery(JmDNSImpl dns, long expirationTime)
         {
             // Nothing to do (?)
@@ -497,7 +550,7 @@ public abstract class DNSRecord extends DNSEntry
             // Nothing to do (?)
             // Shouldn't we care if we get a conflict at this level?
             /*
-                         ServiceInfo info = (ServiceInfo) dns.services.get(name.toLowerCase());
+                         ServiceInfo info = (ServiceInfo) dns.services.get(key);
                          if (info != null) {
                                  if (! Arrays.equals(text,info.text)) {
                                          info.revertState();
@@ -604,9 +657,23 @@ public abstract class DNSRecord extends DNSEntry
             return (priority == s.priority) && (weight == s.weight) && (port == s.port) && server.equals(s.server);
         }
 
+        int valueHashCode()
+        {
+            return ((priority * 31 + weight) * 31 + port) * 31 + server.hashCode();
+        }
+
+        boolean sameValue(DNSIncoming.RecordView other) throws IOException
+        {
+            if (!DNSIncoming.USE_DOMAIN_NAME_FORMAT_FOR_SRV_TARGET)
+            {
+                return super.sameValue(other);
+            }
+            return (priority == other.readUnsignedShort(0)) && (weight == other.readUnsignedShort(2)) && (port == other.readUnsignedShort(4)) && other.sameName(6, server);
+        }
+
         boolean handleQuery(JmDNSImpl dns, long expirationTime)
         {
-            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(name.toLowerCase());
+            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(key);
             if (info != null
                 && (port != info.port || !server.equalsIgnoreCase(dns.getLocalHost().getName())))
             {
@@ -646,10 +713,9 @@ public abstract class DNSRecord extends DNSEntry
                 if (info.getState().isProbing() && comparison > 0)
                 {
                     // We lost the tie break
-                    String oldName = info.getQualifiedName().toLowerCase();
+                    String oldName = DNSNameTable.getKey(info.getQualifiedName());
                     info.setName(dns.incrementName(info.getName()));
-                    dns.getServices().remove(oldName);
-                    dns.getServices().put(info.getQualifiedName().toLowerCase(), info);
+                    dns.services.rename(oldName, info);
                     logger.finer("handleQuery() Lost tie break: new unique name chosen:" + info.getName());
 
                     // We revert the state to start probing again with the new name
@@ -670,7 +736,7 @@ public abstract class DNSRecord extends DNSEntry
 
         boolean handleResponse(JmDNSImpl dns)
         {
-            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(name.toLowerCase());
+            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(key);
             if (info != null
                 && (port != info.port || !server.equalsIgnoreCase(dns.getLocalHost().getName())))
             {
@@ -678,10 +744,9 @@ public abstract class DNSRecord extends DNSEntry
 
                 if (info.getState().isProbing())
                 {
-                    String oldName = info.getQualifiedName().toLowerCase();
+                    String oldName = DNSNameTable.getKey(info.getQualifiedName());
                     info.setName(dns.incrementName(info.getName()));
-                    dns.getServices().remove(oldName);
-                    dns.getServices().put(info.getQualifiedName().toLowerCase(), info);
+                    dns.services.rename(oldName, info);
                     logger.finer("handleResponse() New unique name chose:" + info.getName());
 
                 }
@@ -693,7 +758,7 @@ public abstract class DNSRecord extends DNSEntry
 
         DNSOutgoing addAnswer(JmDNSImpl dns, DNSIncoming in, InetAddress addr, int port, DNSOutgoing out) throws IOException
         {
-            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(name.toLowerCase());
+            ServiceInfoImpl info = (ServiceInfoImpl) dns.getServices().get(key);
             if (info != null)
             {
                 if (this.port == info.port != server.equals(dns.getLocalHost().getName()))
@@ -11,7 +11,12 @@ import java.net.DatagramPacket;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,16 +37,50 @@ public class HostInfo
      */
     private int hostNameCount;
 
+    /**
+     * The host whose name this one shares, when JmDNS uses several
+     * interfaces, or null.
+     */
+    private final HostInfo primary;
+
+    /**
+     * The length of the network prefix of the address, or -1 if it is not
+     * known.
+     */
+    private int prefixLength = -1;
+
+    /**
+     * The address records of the host, created once for its current name.
+     */
+    private volatile DNSRecord.Address dns4AddressRecord;
+    private volatile DNSRecord.Address dns6AddressRecord;
+
     public HostInfo(InetAddress address, String name)
+    {
+        this(address, name, null);
+    }
+
+    /**
+     * Creates the host of another interface of JmDNS, which has the name of
+     * the primary host.
+     */
+    HostInfo(InetAddress address, HostInfo primary)
+    {
+        this(address, null, primary);
+    }
+
+    private HostInfo(InetAddress address, String name, HostInfo primary)
     {
         super();
         this.address = address;
         this.name = name;
+        this.primary = primary;
         if (address != null)
         {
             try
             {
                 interfaze = NetworkInterface.getByInetAddress(address);
+                prefixLength = getPrefixLength(interfaze, address);
             }
             catch (Exception exception)
             {
@@ -53,7 +92,7 @@ public class HostInfo
 
     public String getName()
     {
-        return name;
+        return (primary != null) ? primary.getName() : name;
     }
 
     public InetAddress getAddress()
@@ -68,6 +107,10 @@ public class HostInfo
 
     synchronized String incrementHostName()
     {
+        if (primary != null)
+        {
+            return primary.incrementHostName();
+        }
         hostNameCount++;
         int plocal = name.indexOf(".local.");
         int punder = name.lastIndexOf("-");
@@ -75,12 +118,119 @@ public class HostInfo
         return name;
     }
 
+    /**
+     * Checks that the interface still has the address of the host. If the
+     * address has gone away, the host takes another address of the interface,
+     * of the same family if there is one.
+     *
+     * @return true if the address of the host has changed
+     */
+    synchronized boolean updateAddress()
+    {
+        if (address == null || interfaze == null)
+        {
+            return false;
+        }
+        InetAddress replacement = null;
+        try
+        {
+            // The interface is looked up again, it only holds the addresses
+            // it had when it was looked up.
+            final NetworkInterface current = NetworkInterface.getByName(interfaze.getName());
+            if (current == null)
+            {
+                return false;
+            }
+            for (final Enumeration e = current.getInetAddresses(); e.hasMoreElements();)
+            {
+                final InetAddress candidate = (InetAddress) e.nextElement();
+                if (candidate.equals(address))
+                {
+                    return false;
+                }
+                if (replacement == null || (!replacement.getClass().equals(address.getClass()) && candidate.getClass().equals(address.getClass())))
+                {
+                    replacement = candidate;
+                }
+            }
+            if (replacement == null)
+            {
+                return false;
+            }
+            interfaze = current;
+            prefixLength = getPrefixLength(current, replacement);
+        }
+        catch (final Exception exception)
+        {
+            logger.log(Level.WARNING, "updateAddress() exception ", exception);
+            return false;
+        }
+        logger.info("updateAddress() " + address.getHostAddress() + " is now " + replacement.getHostAddress());
+        address = replacement;
+        dns4AddressRecord = null;
+        dns6AddressRecord = null;
+        return true;
+    }
+
+    private static int getPrefixLength(NetworkInterface ni, InetAddress address)
+    {
+        if (ni != null)
+        {
+            for (final Iterator i = ni.getInterfaceAddresses().iterator(); i.hasNext();)
+            {
+                final InterfaceAddress interfaceAddress = (InterfaceAddress) i.next();
+                if (address.equals(interfaceAddress.getAddress()))
+                {
+                    return interfaceAddress.getNetworkPrefixLength();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True if an address is on the link of this host: a link local IPv6
+     * address with the scope of its interface, or an address of its subnet.
+     * This tells on which interface a packet was received, when the transport
+     * can not tell.
+     */
+    synchronized boolean isOnLink(InetAddress from)
+    {
+        if (address == null || from == null || !from.getClass().equals(address.getClass()))
+        {
+            return false;
+        }
+        if (from.isLinkLocalAddress() && from instanceof Inet6Address && interfaze != null)
+        {
+            return ((Inet6Address) from).getScopeId() == interfaze.getIndex();
+        }
+        if (prefixLength < 0)
+        {
+            return from.equals(address);
+        }
+        final byte[] a = address.getAddress();
+        final byte[] b = from.getAddress();
+        for (int bit = 0; bit < prefixLength; bit += 8)
+        {
+            final int mask = (prefixLength - bit >= 8) ? 0xFF : (0xFF00 >> (prefixLength - bit)) & 0xFF;
+            if (((a[bit / 8] ^ b[bit / 8]) & mask) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     boolean shouldIgnorePacket(DatagramPacket packet)
+    {
+        return shouldIgnorePacket(packet.getAddress());
+    }
+
+    boolean shouldIgnorePacket(InetAddress from)
     {
         boolean result = false;
         if (getAddress() != null)
         {
-            InetAddress from = packet.getAddress();
             if (from != null)
             {
                 if (from.isLinkLocalAddress() && (!getAddress().isLinkLocalAddress()))
@@ -107,26 +257,66 @@ public class HostInfo
         return (DNSConstants.TYPE_AAAA == address.type ? getDNS6AddressRecord() : getDNS4AddressRecord());
     }
 
+    /**
+     * Returns the A record of the host, or null. The record is shared, and
+     * must not be modified or added to a cache.
+     */
     public DNSRecord.Address getDNS4AddressRecord()
     {
         if ((getAddress() != null) &&
             ((getAddress() instanceof Inet4Address) ||
             ((getAddress() instanceof Inet6Address) && (((Inet6Address) getAddress()).isIPv4CompatibleAddress()))))
         {
-            return new DNSRecord.Address(getName(), DNSConstants.TYPE_A, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, getAddress());
+            DNSRecord.Address record = dns4AddressRecord;
+            if (record == null || !record.getName().equals(getName()))
+            {
+                record = new DNSRecord.Address(getName(), DNSConstants.TYPE_A, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, getAddress());
+                dns4AddressRecord = record;
+            }
+            return record;
         }
         return null;
     }
 
+    /**
+     * Returns the AAAA record of the host, or null. The record is shared, and
+     * must not be modified or added to a cache.
+     */
     public DNSRecord.Address getDNS6AddressRecord()
     {
         if ((getAddress() != null) && (getAddress() instanceof Inet6Address))
         {
-            return new DNSRecord.Address(getName(), DNSConstants.TYPE_AAAA, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, getAddress());
+            DNSRecord.Address record = dns6AddressRecord;
+            if (record == null || !record.getName().equals(getName()))
+            {
+                record = new DNSRecord.Address(getName(), DNSConstants.TYPE_AAAA, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, getAddress());
+                dns6AddressRecord = record;
+            }
+            return record;
         }
         return null;
     }
 
+    /**
+     * Returns the A and AAAA records of the host with a TTL, such as 0 for
+     * goodbyes.
+     */
+    public List getAddressRecords(int ttl)
+    {
+        final List records = new ArrayList(2);
+        final DNSRecord.Address dns4 = getDNS4AddressRecord();
+        if (dns4 != null)
+        {
+            records.add((ttl == DNSConstants.DNS_TTL) ? dns4 : new DNSRecord.Address(getName(), DNSConstants.TYPE_A, DNSConstants.CLASS_IN, ttl, getAddress()));
+        }
+        final DNSRecord.Address dns6 = getDNS6AddressRecord();
+        if (dns6 != null)
+        {
+            records.add((ttl == DNSConstants.DNS_TTL) ? dns6 : new DNSRecord.Address(getName(), DNSConstants.TYPE_AAAA, DNSConstants.CLASS_IN, ttl, getAddress()));
+        }
+        return records;
+    }
+
     public String toString()
     {
         StringBuffer buf = new StringBuffer();
@@ -6,24 +6,42 @@ package javax.jmdns.impl;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceBrowser;
 import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceInfo;
 import javax.jmdns.ServiceListener;
@@ -31,12 +49,16 @@ import javax.jmdns.ServiceTypeListener;
 import javax.jmdns.impl.tasks.Announcer;
 import javax.jmdns.impl.tasks.TextAnnouncer;
 import javax.jmdns.impl.tasks.Canceler;
+import javax.jmdns.impl.tasks.DNSTask;
+import javax.jmdns.impl.tasks.ExecutorTaskScheduler;
 import javax.jmdns.impl.tasks.Prober;
+import javax.jmdns.impl.tasks.Querier;
 import javax.jmdns.impl.tasks.RecordReaper;
 import javax.jmdns.impl.tasks.Renewer;
 import javax.jmdns.impl.tasks.Responder;
 import javax.jmdns.impl.tasks.ServiceInfoResolver;
 import javax.jmdns.impl.tasks.ServiceResolver;
+import javax.jmdns.impl.tasks.TaskScheduler;
 import javax.jmdns.impl.tasks.TypeResolver;
 
 // REMIND: multiple IP addresses
@@ -52,27 +74,68 @@ public class JmDNSImpl extends JmDNS
 {
     private static Logger logger = Logger.getLogger(JmDNSImpl.class.getName());
 
+    /**
+     * Set this to true to receive and send packets with a DatagramChannel
+     * instead of a MulticastSocket. All the instances using the channel
+     * transport share a single receiving thread. If the channel can not be
+     * opened, the MulticastSocket is used.
+     */
+    public static boolean USE_NIO_TRANSPORT = false;
+
+    /**
+     * The maximum number of milliseconds close() waits for the goodbyes of
+     * the services and of the host. The goodbyes are sent twice within this
+     * time, or at the usual interval if it is longer. With 0, close() does
+     * not wait, and goodbyes may not be sent.
+     */
+    public static int CLOSE_TIMEOUT = 1000;
+
+    /**
+     * Set this to false to recover from an IO error by restarting JmDNS: the
+     * services are canceled, the cache is cleared and the services are
+     * registered again. By default, the transport is reopened in place, the
+     * cache is kept and queried again, and the services are only probed again
+     * if the address of the host has changed.
+     */
+    public static boolean INCREMENTAL_RECOVERY = true;
+
+    /**
+     * The number of milliseconds before a recovery is tried again, when the
+     * transport could not be reopened.
+     */
+    public static int RECOVERY_RETRY_INTERVAL = 1000;
+
     /**
      * This is the multicast group, we are listening to for multicast DNS
      * messages.
      */
     private InetAddress group;
+    private InetSocketAddress groupAddress;
+    /**
+     * The IPv6 multicast group, which the interfaces with an IPv6 address
+     * use when JmDNS uses several interfaces.
+     */
+    private InetAddress group6;
+    private InetSocketAddress group6Address;
     /**
      * This is our multicast socket.
      */
     private MulticastSocket socket;
-
     /**
-     * Used to fix live lock problem on unregester.
+     * This is our multicast channel, if we use the NIO transport instead of
+     * the multicast socket.
      */
-
-    private boolean closed = false;
+    private DatagramChannel channel;
+    /**
+     * The memberships of the channel, one for each interface.
+     */
+    private final List memberships = new ArrayList();
 
     /**
-     * Holds instances of JmDNS.DNSListener. Must by a synchronized collection,
-     * because it is updated from concurrent threads.
+     * Holds instances of JmDNS.DNSListener, indexed by the name of their
+     * question.
      */
-    private List listeners;
+    private DNSListenerRegistry listeners;
     /**
      * Holds instances of ServiceListener's. Keys are Strings holding a fully
      * qualified service type. Values are LinkedList's of ServiceListener's.
@@ -83,6 +146,31 @@ public class JmDNSImpl extends JmDNS
      */
     private List typeListeners;
 
+    /**
+     * The continuous queries for the services of the types which have
+     * listeners. Keys are lower case service types, values are instances of
+     * ServiceResolver.
+     */
+    private final Map serviceResolvers = new HashMap();
+
+    /**
+     * The continuous query for service types, while there are service type
+     * listeners.
+     */
+    private TypeResolver typeResolver;
+
+    /**
+     * The pending asynchronous requests for service infos. Keys are lower
+     * case qualified service names, values are instances of
+     * ServiceResolution.
+     */
+    private final Map resolutions = new HashMap();
+
+    /**
+     * Delivers the events of the service listeners and service type listeners.
+     */
+    private final ListenerDispatcher dispatcher = new ListenerDispatcher();
+
     /**
      * Cache for DNSEntry's.
      */
@@ -93,7 +181,7 @@ public class JmDNSImpl extends JmDNS
      * instances of String which hold an all lower-case version of the fully
      * qualified service name. Values are instances of ServiceInfo.
      */
-    Map services;
+    ServiceTable services;
 
     /**
      * This hashtable holds the service types that have been registered or that
@@ -112,8 +200,31 @@ public class JmDNSImpl extends JmDNS
      */
     private HostInfo localHost;
 
+    /**
+     * The hosts of the interfaces JmDNS uses: the local host, and the hosts
+     * of the other interfaces, which share its name. There is one transport
+     * for all of them, which is joined to the multicast group on each
+     * interface.
+     */
+    private HostInfo[] hosts;
+
     private Thread incomingListener = null;
 
+    /**
+     * True while a recovery is scheduled or running. Further errors are
+     * handled by that recovery.
+     */
+    private final AtomicBoolean recovering = new AtomicBoolean();
+    private final AtomicLong recoveries = new AtomicLong();
+    private final AtomicLong addressChanges = new AtomicLong();
+    private volatile long lastRecoveryTime;
+    private volatile long maxRecoveryTime;
+
+    /**
+     * Parses and handles the packets received by the transport.
+     */
+    private PacketPipeline pipeline;
+
     /**
      * Throttle count. This is used to count the overall number of probes sent
      * by JmDNS. When the last throttle increment happened .
@@ -125,10 +236,10 @@ public class JmDNSImpl extends JmDNS
     private long lastThrottleIncrement;
 
     /**
-     * The timer is used to dispatch all outgoing messages of JmDNS. It is also
-     * used to dispatch maintenance tasks for the DNS cache.
+     * The scheduler is used to dispatch all outgoing messages of JmDNS. It is
+     * also used to dispatch maintenance tasks for the DNS cache.
      */
-    Timer timer;
+    private TaskScheduler scheduler;
 
     /**
      * The source for random values. This is used to introduce random delays in
@@ -160,19 +271,19 @@ public class JmDNSImpl extends JmDNS
     private DNSState state = DNSState.PROBING_1;
 
     /**
-     * Timer task associated to the host name. This is used to prevent from
+     * Task associated to the host name. This is used to prevent from
      * having multiple tasks associated to the host name at the same time.
      */
-    private TimerTask task;
+    private DNSTask task;
 
     /**
-     * This hashtable is used to maintain a list of service types being
-     * collected by this JmDNS instance. The key of the hashtable is a service
-     * type name, the value is an instance of JmDNS.ServiceCollector.
+     * The browsers of the service types being listed by this JmDNS instance.
+     * The key of the map is a lower case service type name, the value is an
+     * instance of ServiceBrowserImpl.
      * 
      * @see #list
      */
-    private final HashMap serviceCollectors = new HashMap();
+    private final HashMap browsers = new HashMap();
 
     /**
      * Create an instance of JmDNS.
@@ -183,7 +294,7 @@ public class JmDNSImpl extends JmDNS
         /*try
         {*/
             final InetAddress addr = InetAddress.getLocalHost();
-            init(addr.isLoopbackAddress() ? null : addr, addr.getHostName()); // [
+            init(new InetAddress[] {addr.isLoopbackAddress() ? null : addr}, addr.getHostName(), null); // [
             // PJYF
             // Oct
             // 14
@@ -213,7 +324,7 @@ public class JmDNSImpl extends JmDNS
         /*try
         {*/
             String name = addr.getHostName();
-            init(addr, name);
+            init(new InetAddress[] {addr}, name, null);
         /*}
         catch (final IOException e)
         {
@@ -221,15 +332,71 @@ public class JmDNSImpl extends JmDNS
         }*/
     }
 
+    /**
+     * Create an instance of JmDNS bound to a specific network interface, whose
+     * tasks are run by the given scheduler. A VirtualTaskScheduler lets tests
+     * control the timing of the tasks.
+     * 
+     * @param addr
+     *      The interface to which JmDNS binds to, or null for the local host.
+     * @param scheduler
+     *      The scheduler of the tasks, or null for an ExecutorTaskScheduler.
+     */
+    public JmDNSImpl(InetAddress addr, TaskScheduler scheduler) throws IOException
+    {
+        if (addr == null)
+        {
+            addr = InetAddress.getLocalHost();
+            init(new InetAddress[] {addr.isLoopbackAddress() ? null : addr}, addr.getHostName(), scheduler);
+        }
+        else
+        {
+            init(new InetAddress[] {addr}, addr.getHostName(), scheduler);
+        }
+    }
+
+    /**
+     * Create an instance of JmDNS which uses several network interfaces,
+     * given an IP-address of each. The instance has one cache and one host
+     * name, and answers a query with the address of the interface which
+     * received it.
+     * 
+     * @param addrs
+     *      The addresses of the interfaces, IPv4 or IPv6. The first one gives
+     *      the host name.
+     * @param scheduler
+     *      The scheduler of the tasks, or null for an ExecutorTaskScheduler.
+     * @throws IllegalArgumentException
+     *      If there is no address, or an address is null.
+     */
+    public JmDNSImpl(InetAddress[] addrs, TaskScheduler scheduler) throws IOException
+    {
+        if (addrs == null || addrs.length == 0)
+        {
+            throw new IllegalArgumentException("no address");
+        }
+        addrs = addrs.clone();
+        for (int i = 0; i < addrs.length; i++)
+        {
+            if (addrs[i] == null)
+            {
+                throw new IllegalArgumentException("address " + i + " is null");
+            }
+        }
+        init(addrs, addrs[0].getHostName(), scheduler);
+    }
+
     /**
      * Initialize everything.
      * 
-     * @param address
-     *      The interface to which JmDNS binds to.
+     * @param addresses
+     *      The interfaces to which JmDNS binds to.
      * @param name
-     *      The host name of the interface.
+     *      The host name of the interfaces.
+     * @param scheduler
+     *      The scheduler of the tasks, or null for the default one.
      */
-    private void init(InetAddress address, String name) throws IOException
+    private void init(InetAddress[] addresses, String name, TaskScheduler scheduler) throws IOException
     {
         // A host name with "." is illegal. so strip off everything and append .
         // local.
@@ -240,66 +407,192 @@ public class JmDNSImpl extends JmDNS
         }
         name += ".local.";
         // localHost to IP address binding
-        localHost = new HostInfo(address, name);
+        localHost = new HostInfo(addresses[0], name);
+        hosts = new HostInfo[addresses.length];
+        hosts[0] = localHost;
+        for (int i = 1; i < addresses.length; i++)
+        {
+            hosts[i] = new HostInfo(addresses[i], localHost);
+        }
 
         cache = new DNSCache(100);
 
-        listeners = Collections.synchronizedList(new ArrayList());
+        listeners = new DNSListenerRegistry();
         serviceListeners = new HashMap();
         typeListeners = new ArrayList();
 
-        services = new Hashtable(20);
+        services = new ServiceTable(20);
         serviceTypes = new Hashtable(20);
 
-        // REMIND: If I could pass in a name for the Timer thread,
-        // I would pass' JmDNS.Timer'.
-        timer = new Timer();
-        new RecordReaper(this).start(timer);
+        this.scheduler = (scheduler != null) ? scheduler : new ExecutorTaskScheduler();
+        new RecordReaper(this).start(this.scheduler);
         shutdown = new Thread(new Shutdown(), "JmDNS.Shutdown");
         Runtime.getRuntime().addShutdownHook(shutdown);
 
-        incomingListener = new Thread(new SocketListener(this), "JmDNS.SocketListener");
+        pipeline = new PacketPipeline(this);
 
         // Bind to multicast socket
-        openMulticastSocket(getLocalHost());
+        openMulticastSocket();
         start(getServices().values());
     }
 
-    private void start(Collection serviceInfos)
+    private void start(Collection serviceInfos) throws IOException
     {
         setState(DNSState.PROBING_1);
-        incomingListener.start();
-        new Prober(this).start(timer);
-        for (final Iterator iterator = serviceInfos.iterator(); iterator.hasNext();)
+        startListener();
+        new Prober(this).start(scheduler);
+        if (!serviceInfos.isEmpty())
+        {
+            // Registering without waiting, the caller may hold the lock the
+            // prober needs
+            final List copies = new ArrayList(serviceInfos.size());
+            for (final Iterator iterator = serviceInfos.iterator(); iterator.hasNext();)
+            {
+                copies.add(new ServiceInfoImpl((ServiceInfoImpl) iterator.next()));
+            }
+            register(copies);
+        }
+    }
+
+    /**
+     * Starts receiving the packets of the transport which has been opened.
+     */
+    private void startListener() throws IOException
+    {
+        if (incomingListener != null)
+        {
+            incomingListener.start();
+        }
+        else
+        {
+            ChannelListener.getInstance().register(this, channel);
+        }
+    }
+
+    private void openMulticastSocket() throws IOException
+    {
+        if (group == null)
+        {
+            group = InetAddress.getByName(DNSConstants.MDNS_GROUP);
+            groupAddress = new InetSocketAddress(group, DNSConstants.MDNS_PORT);
+            group6 = InetAddress.getByName(DNSConstants.MDNS_GROUP_IPV6);
+            group6Address = new InetSocketAddress(group6, DNSConstants.MDNS_PORT);
+        }
+        if (socket != null || channel != null)
+        {
+            this.closeMulticastSocket();
+        }
+        if (USE_NIO_TRANSPORT)
         {
             try
             {
-                registerService(new ServiceInfoImpl((ServiceInfoImpl) iterator.next()));
+                openChannel();
+                return;
             }
             catch (final Exception exception)
             {
-                logger.log(Level.WARNING, "start() Registration exception ", exception);
+                logger.log(Level.WARNING, "openMulticastSocket() Falling back to MulticastSocket, channel exception ", exception);
+                closeMulticastSocket();
+            }
+        }
+        socket = new MulticastSocket(DNSConstants.MDNS_PORT);
+        socket.setTimeToLive(255);
+        if (hosts.length == 1)
+        {
+            if (localHost.getInterface() != null)
+            {
+                socket.setNetworkInterface(localHost.getInterface());
+            }
+            socket.joinGroup(group);
+        }
+        else
+        {
+            for (int i = 0; i < hosts.length; i++)
+            {
+                if (isFirstOnLink(i))
+                {
+                    socket.joinGroup(getGroupAddress(hosts[i]), getNetworkInterface(hosts[i]));
+                }
             }
         }
+        incomingListener = new Thread(new SocketListener(this, socket), "JmDNS.SocketListener");
     }
 
-    private void openMulticastSocket(HostInfo hostInfo) throws IOException
+    /**
+     * Opens a non-blocking multicast channel. Joining a group with a channel
+     * requires a network interface, so the interface of the host, or the
+     * interface with its address, is used.
+     */
+    private void openChannel() throws IOException
     {
-        if (group == null)
+        boolean inet6 = false;
+        for (int i = 0; i < hosts.length; i++)
         {
-            group = InetAddress.getByName(DNSConstants.MDNS_GROUP);
+            getNetworkInterface(hosts[i]);
+            inet6 |= getGroup(hosts[i]) instanceof Inet6Address;
         }
-        if (socket != null)
+        channel = DatagramChannel.open(inet6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+        channel.bind(new InetSocketAddress(DNSConstants.MDNS_PORT));
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, getNetworkInterface(localHost));
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, Integer.valueOf(255));
+        for (int i = 0; i < hosts.length; i++)
         {
-            this.closeMulticastSocket();
+            if (isFirstOnLink(i))
+            {
+                memberships.add(channel.join(getGroup(hosts[i]), getNetworkInterface(hosts[i])));
+            }
         }
-        socket = new MulticastSocket(DNSConstants.MDNS_PORT);
-        if ((hostInfo != null) && (localHost.getInterface() != null))
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Returns the interface of a host, or the interface with its address.
+     */
+    private static NetworkInterface getNetworkInterface(HostInfo host) throws IOException
+    {
+        NetworkInterface ni = host.getInterface();
+        if (ni == null && host.getAddress() != null)
         {
-            socket.setNetworkInterface(hostInfo.getInterface());
+            ni = NetworkInterface.getByInetAddress(host.getAddress());
         }
-        socket.setTimeToLive(255);
-        socket.joinGroup(group);
+        if (ni == null)
+        {
+            throw new IOException("No network interface for " + host.getAddress());
+        }
+        return ni;
+    }
+
+    /**
+     * Returns the multicast group of a host. The hosts with an IPv6 address
+     * use the IPv6 group, when JmDNS uses several interfaces.
+     */
+    private InetAddress getGroup(HostInfo host)
+    {
+        return (hosts.length > 1 && host.getAddress() instanceof Inet6Address) ? group6 : group;
+    }
+
+    private InetSocketAddress getGroupAddress(HostInfo host)
+    {
+        return (hosts.length > 1 && host.getAddress() instanceof Inet6Address) ? group6Address : groupAddress;
+    }
+
+    /**
+     * True unless an earlier host has the same interface and group, so that
+     * the group is joined, and messages for all hosts are sent, once on each
+     * link.
+     */
+    private boolean isFirstOnLink(int index)
+    {
+        final HostInfo host = hosts[index];
+        for (int i = 0; i < index; i++)
+        {
+            if (getGroup(hosts[i]) == getGroup(host) && hosts[i].getInterface() != null && hosts[i].getInterface().equals(host.getInterface()))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void closeMulticastSocket()
@@ -307,12 +600,21 @@ public class JmDNSImpl extends JmDNS
         logger.finer("closeMulticastSocket()");
         if (socket != null)
         {
-            // close socket
+            // close socket, the listener stops quietly once it is no longer
+            // the socket of JmDNS
+            final MulticastSocket closing = socket;
+            socket = null;
             try
             {
-                socket.leaveGroup(group);
-                socket.close();
-                if (incomingListener != null)
+                if (!closing.isClosed())
+                {
+                    if (hosts.length == 1)
+                    {
+                        closing.leaveGroup(group);
+                    }
+                    closing.close();
+                }
+                if (incomingListener != null && incomingListener != Thread.currentThread())
                 {
                     incomingListener.join();
                 }
@@ -321,8 +623,28 @@ public class JmDNSImpl extends JmDNS
             {
                 logger.log(Level.WARNING, "closeMulticastSocket() Close socket exception ",
                         exception);
+                closing.close();
             }
-            socket = null;
+            incomingListener = null;
+        }
+        if (channel != null)
+        {
+            // close channel, this also removes it from the selector
+            try
+            {
+                for (final Iterator i = memberships.iterator(); i.hasNext();)
+                {
+                    ((MembershipKey) i.next()).drop();
+                }
+                channel.close();
+            }
+            catch (final Exception exception)
+            {
+                logger.log(Level.WARNING, "closeMulticastSocket() Close channel exception ",
+                        exception);
+            }
+            channel = null;
+            memberships.clear();
         }
     }
 
@@ -383,12 +705,57 @@ public class JmDNSImpl extends JmDNS
         return localHost;
     }
 
+    /**
+     * Returns the hosts of the interfaces JmDNS uses. The first one is the
+     * local host. The array must not be modified.
+     */
+    public HostInfo[] getHosts()
+    {
+        return hosts;
+    }
+
+    /**
+     * Returns the host of the interface on which a packet from an address was
+     * received, or null if it is not known.
+     */
+    HostInfo getHost(InetAddress from)
+    {
+        if (hosts.length == 1)
+        {
+            return localHost;
+        }
+        for (int i = 0; i < hosts.length; i++)
+        {
+            if (hosts[i].isOnLink(from))
+            {
+                return hosts[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True if an address is the address of one of the hosts.
+     */
+    boolean isLocalAddress(InetAddress addr)
+    {
+        for (int i = 0; i < hosts.length; i++)
+        {
+            if (addr.equals(hosts[i].getAddress()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @see javax.jmdns.JmDNS#getInterface()
      */
     public InetAddress getInterface() throws IOException
     {
-        return socket.getInterface();
+        final MulticastSocket ms = socket;
+        return (ms != null && hosts.length == 1) ? ms.getInterface() : localHost.getAddress();
     }
 
     /**
@@ -405,107 +772,410 @@ public class JmDNSImpl extends JmDNS
      */
     public ServiceInfo getServiceInfo(String type, String name, int timeout)
     {
-        final ServiceInfoImpl info = new ServiceInfoImpl(type, name);
-        new ServiceInfoResolver(this, info).start(timer);
-
+        // Not completed by the listener executor, which may be waiting here.
+        final CompletableFuture future = resolve(type, name, timeout);
         try
         {
-            final long end = System.currentTimeMillis() + timeout;
-            long delay;
-            synchronized (info)
-            {
-                while (!info.hasData() && (delay = end - System.currentTimeMillis()) > 0)
-                {
-                    info.wait(delay);
-                }
-            }
+            return (ServiceInfo) future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (final TimeoutException e)
+        {
+            // the timer of the request is late
         }
         catch (final InterruptedException e)
         {
-            // empty
+            Thread.currentThread().interrupt();
         }
-
-        return (info.hasData()) ? info : null;
+        catch (final ExecutionException e)
+        {
+            logger.log(Level.WARNING, "getServiceInfo() exception ", e);
+        }
+        future.cancel(false);
+        return null;
     }
 
     /**
-     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     * @see javax.jmdns.JmDNS#getServiceInfoAsync(java.lang.String,
      *  java.lang.String)
      */
-    public void requestServiceInfo(String type, String name)
-    {
-        requestServiceInfo(type, name, false, 3 * 1000);
-    }
-    /**
-     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
-     *  java.lang.String, boolean)
-     */
-    public void requestServiceInfo(String type, String name, boolean persistent)
+    public CompletableFuture getServiceInfoAsync(String type, String name)
     {
-        requestServiceInfo(type, name, persistent, 3 * 1000);
+        return getServiceInfoAsync(type, name, 3 * 1000);
     }
 
     /**
-     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     * @see javax.jmdns.JmDNS#getServiceInfoAsync(java.lang.String,
      *  java.lang.String, int)
      */
-    public void requestServiceInfo(String type, String name, int timeout)
+    public CompletableFuture getServiceInfoAsync(String type, String name, int timeout)
     {
-        requestServiceInfo(type, name, false, timeout);
+        final CompletableFuture resolution = resolve(type, name, timeout);
+        if (resolution.isDone())
+        {
+            return resolution;
+        }
+        final CompletableFuture future = new CompletableFuture();
+        resolution.whenComplete(new BiConsumer()
+        {
+            public void accept(Object result, Object failure)
+            {
+                if (failure != null)
+                {
+                    completeExceptionally(future, (Throwable) failure);
+                }
+                else
+                {
+                    complete(future, result);
+                }
+            }
+        });
+        future.whenComplete(new BiConsumer()
+        {
+            public void accept(Object result, Object failure)
+            {
+                // forgets the request if it has been cancelled
+                resolution.cancel(false);
+            }
+        });
+        return future;
     }
 
     /**
-     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
-     *  java.lang.String, boolean, int)
+     * Requests a service info, and joins the resolution of the same service
+     * which is still going on, if there is one. The returned future is
+     * completed directly, not by the listener executor.
      */
-    public void requestServiceInfo(String type, String name,
-            boolean persistent, int timeout)
+    private CompletableFuture resolve(String type, String name, int timeout)
     {
-        registerServiceType(type);
-        final ServiceInfoImpl info = new ServiceInfoImpl(type, name);
-        new ServiceInfoResolver(this, info, persistent).start(timer);
-
-        try
+        final ServiceInfoImpl info = resolveFromCache(type, name);
+        if (info.hasData())
         {
-            final long end = System.currentTimeMillis() + timeout;
-            long delay;
-            synchronized (info)
+            return CompletableFuture.completedFuture(info);
+        }
+        final String key = DNSNameTable.getKey(info.getQualifiedName());
+        ServiceResolution resolution;
+        CompletableFuture future = null;
+        synchronized (resolutions)
+        {
+            resolution = (ServiceResolution) resolutions.get(key);
+            if (resolution != null)
             {
-                while (!info.hasData() && (delay = end - System.currentTimeMillis()) > 0)
-                {
-                    info.wait(delay);
-                }
+                future = resolution.add(timeout);
+            }
+            if (future == null)
+            {
+                resolution = new ServiceResolution(this, info, key);
+                resolutions.put(key, resolution);
+                future = resolution.add(timeout);
+            }
+            else
+            {
+                resolution = null;
             }
         }
-        catch (final InterruptedException e)
+        if (resolution != null)
         {
-            // empty
+            resolution.start(scheduler);
         }
+        return future;
     }
 
     /**
-     * @see javax.jmdns.JmDNS#
+     * Completes a future of the API with the listener executor, if there is
+     * one, so that the code depending on it does not hold up JmDNS.
      */
-
-    void handleServiceResolved(ServiceInfoImpl info)
+    void complete(final CompletableFuture future, final Object result)
     {
-        List list = null;
-        ArrayList listCopy = null;
-        synchronized (serviceListeners)
+        execute(new Runnable()
         {
-            list = (List) serviceListeners.get(info.type.toLowerCase());
-
-            if (list != null)
+            public void run()
             {
-                listCopy = new ArrayList(list);
+                future.complete(result);
             }
-        }
-        if (listCopy != null)
+        });
+    }
+
+    /**
+     * Completes a future of the API exceptionally with the listener executor,
+     * if there is one.
+     */
+    void completeExceptionally(final CompletableFuture future, final Throwable failure)
+    {
+        execute(new Runnable()
+        {
+            public void run()
+            {
+                future.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * Completes a future of the API without running its dependent code on
+     * the calling thread, which may hold locks of JmDNS. The future is
+     * completed by the listener executor, if there is one, or else by a task
+     * of the scheduler.
+     */
+    void completeLater(final CompletableFuture future, final Object result)
+    {
+        final Executor executor = getListenerExecutor();
+        if (executor != null)
+        {
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        future.complete(result);
+                    }
+                });
+                return;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // complete it with the scheduler
+            }
+        }
+        final DNSTask task = new DNSTask()
+        {
+            public void run()
+            {
+                future.complete(result);
+            }
+        };
+        scheduler.schedule(task, 0);
+        if (task.isCanceled() && !future.isDone())
+        {
+            // the scheduler has been shut down
+            future.complete(result);
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        final Executor executor = getListenerExecutor();
+        if (executor != null)
+        {
+            try
+            {
+                executor.execute(task);
+                return;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // run it here
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Completes a future of the API with a TimeoutException, if it is not
+     * done within a timeout.
+     *
+     * @param timeout milliseconds, or 0 for no timeout
+     * @return the future
+     */
+    CompletableFuture withTimeout(final CompletableFuture future, long timeout)
+    {
+        if (timeout > 0 && !future.isDone())
+        {
+            final DNSTask timer = new DNSTask()
+            {
+                public void run()
+                {
+                    completeExceptionally(future, new TimeoutException());
+                }
+            };
+            future.whenComplete(new BiConsumer()
+            {
+                public void accept(Object result, Object failure)
+                {
+                    timer.cancel();
+                }
+            });
+            scheduler.schedule(timer, timeout);
+            if (timer.isCanceled() && !future.isDone())
+            {
+                // the scheduler has been shut down
+                future.completeExceptionally(new TimeoutException());
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Forgets a resolution which has finished, unless it has been replaced.
+     */
+    void removeResolution(String key, ServiceResolution resolution)
+    {
+        synchronized (resolutions)
+        {
+            if (resolutions.get(key) == resolution)
+            {
+                resolutions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Completes all pending asynchronous requests with null.
+     */
+    private void cancelResolutions()
+    {
+        final Object[] pending;
+        synchronized (resolutions)
+        {
+            pending = resolutions.values().toArray();
+            resolutions.clear();
+        }
+        for (int i = 0; i < pending.length; i++)
+        {
+            ((ServiceResolution) pending[i]).cancel();
+        }
+    }
+
+    /**
+     * Creates a service info, filled with what the cache knows about it. If
+     * the info is complete, the service listeners have been told it is
+     * resolved.
+     */
+    private ServiceInfoImpl resolveFromCache(String type, String name)
+    {
+        final ServiceInfoImpl info = new ServiceInfoImpl(type, name);
+        info.setDns(this);
+        info.updateFromCache(this, System.currentTimeMillis());
+        return info;
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfoAsync(java.lang.String,
+     *  java.lang.String)
+     */
+    public CompletableFuture requestServiceInfoAsync(String type, String name)
+    {
+        return requestServiceInfoAsync(type, name, false, 3 * 1000);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfoAsync(java.lang.String,
+     *  java.lang.String, boolean, int)
+     */
+    public CompletableFuture requestServiceInfoAsync(String type, String name, boolean persistent, int timeout)
+    {
+        registerServiceType(type);
+        final CompletableFuture future = getServiceInfoAsync(type, name, timeout);
+        if (persistent)
+        {
+            future.thenAccept(new Consumer()
+            {
+                public void accept(Object result)
+                {
+                    if (result != null)
+                    {
+                        // keep listening for updates of the resolved info
+                        final ServiceInfoImpl info = (ServiceInfoImpl) result;
+                        addListener(info, new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     *  java.lang.String)
+     */
+    public void requestServiceInfo(String type, String name)
+    {
+        requestServiceInfo(type, name, false, 3 * 1000);
+    }
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     *  java.lang.String, boolean)
+     */
+    public void requestServiceInfo(String type, String name, boolean persistent)
+    {
+        requestServiceInfo(type, name, persistent, 3 * 1000);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     *  java.lang.String, int)
+     */
+    public void requestServiceInfo(String type, String name, int timeout)
+    {
+        requestServiceInfo(type, name, false, timeout);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#requestServiceInfo(java.lang.String,
+     *  java.lang.String, boolean, int)
+     */
+    public void requestServiceInfo(String type, String name,
+            boolean persistent, int timeout)
+    {
+        registerServiceType(type);
+        final ServiceInfoImpl info = resolveFromCache(type, name);
+        if (info.hasData() && !persistent)
+        {
+            return;
+        }
+        new ServiceInfoResolver(this, info, persistent).start(scheduler);
+
+        try
+        {
+            final long end = System.currentTimeMillis() + timeout;
+            long delay;
+            synchronized (info)
+            {
+                while (!info.hasData() && (delay = end - System.currentTimeMillis()) > 0)
+                {
+                    info.wait(delay);
+                }
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            // empty
+        }
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#
+     */
+
+    void handleServiceResolved(ServiceInfoImpl info)
+    {
+        final ServiceResolution resolution;
+        synchronized (resolutions)
+        {
+            resolution = (ServiceResolution) resolutions.get(DNSNameTable.getKey(info.getQualifiedName()));
+        }
+        if (resolution != null && resolution.getInfo() == info)
+        {
+            resolution.resolved();
+        }
+
+        List list = null;
+        ArrayList listCopy = null;
+        synchronized (serviceListeners)
+        {
+            list = (List) serviceListeners.get(DNSNameTable.getKey(info.type));
+
+            if (list != null)
+            {
+                listCopy = new ArrayList(list);
+            }
+        }
+        if (listCopy != null)
         {
             final ServiceEvent event = new ServiceEventImpl(this, info.type, info.getName(), info);
             for (final Iterator iterator = listCopy.iterator(); iterator.hasNext();)
             {
-                ((ServiceListener) iterator.next()).serviceResolved(event);
+                dispatcher.serviceResolved((ServiceListener) iterator.next(), event);
             }
         }
     }
@@ -530,11 +1200,18 @@ public class JmDNSImpl extends JmDNS
         // report cached service types
         for (final Iterator iterator = serviceTypes.values().iterator(); iterator.hasNext();)
         {
-            listener.serviceTypeAdded(new ServiceEventImpl(this, (String) iterator.next(), null,
+            dispatcher.serviceTypeAdded(listener, new ServiceEventImpl(this, (String) iterator.next(), null,
                     null));
         }
 
-        new TypeResolver(this).start(timer);
+        synchronized (serviceResolvers)
+        {
+            if (typeResolver == null)
+            {
+                typeResolver = new TypeResolver(this);
+                typeResolver.start(scheduler);
+            }
+        }
     }
 
     /**
@@ -546,7 +1223,19 @@ public class JmDNSImpl extends JmDNS
         synchronized (this)
         {
             typeListeners.remove(listener);
+            if (typeListeners.isEmpty())
+            {
+                synchronized (serviceResolvers)
+                {
+                    if (typeResolver != null)
+                    {
+                        typeResolver.cancel();
+                        typeResolver = null;
+                    }
+                }
+            }
         }
+        dispatcher.remove(listener);
     }
 
     /**
@@ -555,7 +1244,7 @@ public class JmDNSImpl extends JmDNS
      */
     public void addServiceListener(String type, ServiceListener listener)
     {
-        final String lotype = type.toLowerCase();
+        final String lotype = DNSNameTable.getKey(type);
         removeServiceListener(lotype, listener);
         List list = null;
 
@@ -572,31 +1261,30 @@ public class JmDNSImpl extends JmDNS
 
         // report cached service types
         final List serviceEvents = new ArrayList();
-        synchronized (cache)
+        for (final Iterator i = cache.getEntries(DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN).iterator(); i.hasNext();)
         {
-            for (final Iterator i = cache.iterator(); i.hasNext();)
+            final DNSRecord rec = (DNSRecord) i.next();
+            if (rec.name.endsWith(type))
             {
-                for (DNSCache.CacheNode n = (DNSCache.CacheNode) i.next(); n != null; n = n.next())
-                {
-                    final DNSRecord rec = (DNSRecord) n.getValue();
-                    if (rec.type == DNSConstants.TYPE_SRV)
-                    {
-                        if (rec.name.endsWith(type))
-                        {
-                            serviceEvents.add(new ServiceEventImpl(this, type, toUnqualifiedName(
-                                    type, rec.name), null));
-                        }
-                    }
-                }
+                serviceEvents.add(new ServiceEventImpl(this, type, toUnqualifiedName(
+                        type, rec.name), null));
             }
         }
         // Actually call listener with all service events added above
         for (final Iterator i = serviceEvents.iterator(); i.hasNext();)
         {
-            listener.serviceAdded((ServiceEventImpl) i.next());
+            dispatcher.serviceAdded(listener, (ServiceEventImpl) i.next());
+        }
+        // Create/start the ServiceResolver of the type
+        synchronized (serviceResolvers)
+        {
+            if (!serviceResolvers.containsKey(lotype))
+            {
+                final ServiceResolver resolver = new ServiceResolver(this, type);
+                serviceResolvers.put(lotype, resolver);
+                resolver.start(scheduler);
+            }
         }
-        // Create/start ServiceResolver
-        new ServiceResolver(this, type).start(timer);
     }
 
     /**
@@ -605,7 +1293,7 @@ public class JmDNSImpl extends JmDNS
      */
     public void removeServiceListener(String type, ServiceListener listener)
     {
-        type = type.toLowerCase();
+        type = DNSNameTable.getKey(type);
         List list = null;
         synchronized (serviceListeners)
         {
@@ -616,9 +1304,41 @@ public class JmDNSImpl extends JmDNS
                 if (list.size() == 0)
                 {
                     serviceListeners.remove(type);
+                    synchronized (serviceResolvers)
+                    {
+                        final ServiceResolver resolver = (ServiceResolver) serviceResolvers.remove(type);
+                        if (resolver != null)
+                        {
+                            resolver.cancel();
+                        }
+                    }
+                }
+            }
+            for (final Iterator i = serviceListeners.values().iterator(); i.hasNext();)
+            {
+                if (((List) i.next()).contains(listener))
+                {
+                    return;
                 }
             }
         }
+        dispatcher.remove(listener);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#setListenerExecutor(java.util.concurrent.Executor, boolean)
+     */
+    public void setListenerExecutor(Executor executor, boolean ordered)
+    {
+        dispatcher.setExecutor(executor, ordered);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#getListenerExecutor()
+     */
+    public Executor getListenerExecutor()
+    {
+        return dispatcher.getExecutor();
     }
 
     /**
@@ -627,20 +1347,7 @@ public class JmDNSImpl extends JmDNS
     public void registerService(ServiceInfo infoAbstract) throws IOException
     {
         final ServiceInfoImpl info = (ServiceInfoImpl) infoAbstract;
-
-        registerServiceType(info.type);
-
-        // bind the service to this address
-        info.server = localHost.getName();
-        info.addr = localHost.getAddress();
-
-        synchronized (this)
-        {
-            makeServiceNameUnique(info);
-            services.put(info.getQualifiedName().toLowerCase(), info);
-        }
-
-        new /* Service */Prober(this).start(timer);
+        register(Collections.singletonList(info));
         try
         {
             synchronized (info)
@@ -658,6 +1365,95 @@ public class JmDNSImpl extends JmDNS
         logger.fine("registerService() JmDNS registered service as " + info);
     }
 
+    /**
+     * @see javax.jmdns.JmDNS#registerServices(java.util.Collection)
+     */
+    public CompletableFuture registerServices(Collection infosAbstract) throws IOException
+    {
+        final List infos = new ArrayList(infosAbstract.size());
+        final Set names = new HashSet();
+        for (final Iterator i = infosAbstract.iterator(); i.hasNext();)
+        {
+            final ServiceInfoImpl info = (ServiceInfoImpl) i.next();
+            if (!names.add(DNSNameTable.getKey(info.getQualifiedName())))
+            {
+                throw new IllegalArgumentException("registerServices() duplicate service " + info.getQualifiedName());
+            }
+            infos.add(info);
+        }
+        if (infos.isEmpty())
+        {
+            return CompletableFuture.completedFuture(Collections.EMPTY_MAP);
+        }
+        return register(infos).getFuture();
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#registerServiceAsync(javax.jmdns.ServiceInfo,
+     *  long)
+     */
+    public CompletableFuture registerServiceAsync(ServiceInfo infoAbstract, long timeout)
+    {
+        final ServiceInfoImpl info = (ServiceInfoImpl) infoAbstract;
+        return withTimeout(firstService(register(Collections.singletonList(info)).getFuture()), timeout);
+    }
+
+    /**
+     * Registers services, which are probed and announced together.
+     */
+    private ServiceRegistration register(List infos)
+    {
+        final ServiceRegistration registration = new ServiceRegistration(this, infos);
+        for (final Iterator i = infos.iterator(); i.hasNext();)
+        {
+            final ServiceInfoImpl info = (ServiceInfoImpl) i.next();
+            registerServiceType(info.type);
+
+            // bind the service to this address
+            info.server = localHost.getName();
+            info.addr = localHost.getAddress();
+            info.setRegistration(registration);
+        }
+
+        synchronized (this)
+        {
+            for (final Iterator i = infos.iterator(); i.hasNext();)
+            {
+                final ServiceInfoImpl info = (ServiceInfoImpl) i.next();
+                makeServiceNameUnique(info);
+                services.put(DNSNameTable.getKey(info.getQualifiedName()), info);
+            }
+        }
+
+        // One prober probes all of them
+        new /* Service */Prober(this).start(scheduler);
+        logger.fine("register() JmDNS registering " + infos.size() + " services");
+        return registration;
+    }
+
+    /**
+     * Returns a future of the only service of a registration.
+     */
+    private static CompletableFuture firstService(CompletableFuture registration)
+    {
+        final CompletableFuture future = new CompletableFuture();
+        registration.whenComplete(new BiConsumer()
+        {
+            public void accept(Object result, Object failure)
+            {
+                if (failure != null)
+                {
+                    future.completeExceptionally((Throwable) failure);
+                }
+                else
+                {
+                    future.complete(((Map) result).values().iterator().next());
+                }
+            }
+        });
+        return future;
+    }
+
     /**
      * @see javax.jmdns.JMDNS#reannounceService(javax.jmdns.ServiceInfo)
      */
@@ -666,14 +1462,14 @@ public class JmDNSImpl extends JmDNS
 
         final ServiceInfoImpl info = (ServiceInfoImpl) infoAbstract;
 
-        if (services.containsKey(info.getQualifiedName().toLowerCase()))
+        if (services.containsKey(DNSNameTable.getKey(info.getQualifiedName())))
         {
-            ServiceInfoImpl info_tmp = (ServiceInfoImpl)services.get(info.getQualifiedName().toLowerCase());
+            ServiceInfoImpl info_tmp = (ServiceInfoImpl)services.get(DNSNameTable.getKey(info.getQualifiedName()));
 
             info.setStateAnnounce();
 
             startTextAnnouncer();
-            //new /* Service */Prober(this).start(timer);
+            //new /* Service */Prober(this).start(scheduler);
             try 
             {
                 synchronized (info)
@@ -696,51 +1492,102 @@ public class JmDNSImpl extends JmDNS
         }
     }
 
+    /**
+     * @see javax.jmdns.JmDNS#reannounceServiceAsync(javax.jmdns.ServiceInfo,
+     *  long)
+     */
+    public CompletableFuture reannounceServiceAsync(ServiceInfo infoAbstract, long timeout)
+    {
+        final ServiceInfoImpl info = (ServiceInfoImpl) infoAbstract;
+        if (!services.containsKey(DNSNameTable.getKey(info.getQualifiedName())))
+        {
+            logger.fine("reannounceServiceAsync() service to be announced not found: " + info);
+            return CompletableFuture.completedFuture(null);
+        }
+        final ServiceRegistration registration = new ServiceRegistration(this, Collections.singletonList(info));
+        if (!info.reannounce(registration))
+        {
+            logger.fine("reannounceServiceAsync() service is still being registered: " + info);
+            final CompletableFuture failed = new CompletableFuture();
+            failed.completeExceptionally(new IllegalStateException("service is still being registered"));
+            return failed;
+        }
+        startTextAnnouncer();
+        return withTimeout(firstService(registration.getFuture()), timeout);
+    }
+
     /**
      * @see javax.jmdns.JmDNS#unregisterService(javax.jmdns.ServiceInfo)
      */
     public void unregisterService(ServiceInfo infoAbstract)
     {
-        final ServiceInfoImpl info = (ServiceInfoImpl) infoAbstract;
-        synchronized (this)
+        waitForCanceler(cancel((ServiceInfoImpl) infoAbstract), 4 * DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#unregisterServiceAsync(javax.jmdns.ServiceInfo,
+     *  long)
+     */
+    public CompletableFuture unregisterServiceAsync(ServiceInfo infoAbstract, long timeout)
+    {
+        return withTimeout(whenCanceled(cancel((ServiceInfoImpl) infoAbstract)), timeout);
+    }
+
+    /**
+     * @see javax.jmdns.JmDNS#unregisterAllServices()
+     */
+    public void unregisterAllServices()
+    {
+        logger.finer("unregisterAllServices()");
+        final Canceler canceler = cancelAll(false, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        if (canceler != null)
         {
-            services.remove(info.getQualifiedName().toLowerCase());
+            waitForCanceler(canceler, 4 * DNSConstants.ANNOUNCE_WAIT_INTERVAL);
         }
-        info.cancel();
+    }
 
-        // Note: We use this lock object to synchronize on it.
-        // Synchronizing on another object (e.g. the ServiceInfo) does
-        // not make sense, because the sole purpose of the lock is to
-        // wait until the canceler has finished. If we synchronized on
-        // the ServiceInfo or on the Canceler, we would block all
-        // accesses to synchronized methods on that object. This is not
-        // what we want!
-        final Object lock = new Object();
-        new Canceler(this, info, lock).start(timer);
-
-        // Remind: We get a deadlock here, if the Canceler does not run!
-        try
+    /**
+     * @see javax.jmdns.JmDNS#unregisterAllServicesAsync(long)
+     */
+    public CompletableFuture unregisterAllServicesAsync(long timeout)
+    {
+        logger.finer("unregisterAllServicesAsync()");
+        final Canceler canceler = cancelAll(false, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        if (canceler == null)
         {
-            synchronized (lock)
-            {
-                lock.wait();
-            }
+            return CompletableFuture.completedFuture(null);
         }
-        catch (final InterruptedException e)
+        return withTimeout(whenCanceled(canceler), timeout);
+    }
+
+    /**
+     * Removes a service, and starts sending its goodbyes.
+     */
+    private Canceler cancel(ServiceInfoImpl info)
+    {
+        synchronized (this)
         {
-            // empty
+            services.remove(DNSNameTable.getKey(info.getQualifiedName()));
         }
+        info.cancel();
+
+        final Canceler canceler = new Canceler(this, info);
+        canceler.start(scheduler);
+        return canceler;
     }
 
     /**
-     * @see javax.jmdns.JmDNS#unregisterAllServices()
+     * Removes all services, and starts sending their goodbyes.
+     *
+     * @param host     true to say goodbye for the host too
+     * @param interval milliseconds between the goodbyes
+     * @return null if there is nothing to say goodbye for
      */
-    public void unregisterAllServices()
+    private Canceler cancelAll(boolean host, long interval)
     {
-        logger.finer("unregisterAllServices()");
-        if (services.size() == 0)
+        if (services.size() == 0 && !host)
         {
-            return;
+            return null;
         }
 
         Collection list;
@@ -754,24 +1601,50 @@ public class JmDNSImpl extends JmDNS
             ((ServiceInfoImpl) iterator.next()).cancel();
         }
 
-        final Object lock = new Object();
-        new Canceler(this, list, lock).start(timer);
-        // Remind: We get a livelock here, if the Canceler does not run!
+        final Canceler canceler = new Canceler(this, list, host, interval);
+        canceler.start(scheduler);
+        return canceler;
+    }
+
+    /**
+     * Waits until the goodbyes of a canceler have been sent. The wait is
+     * bounded, in case the scheduler does not run the canceler anymore.
+     */
+    private void waitForCanceler(Canceler canceler, long timeout)
+    {
         try
         {
-            synchronized (lock)
-            {
-                if (!closed)
-                {
-                    lock.wait();
-                }
-            }
+            canceler.getFuture().get(timeout, TimeUnit.MILLISECONDS);
         }
         catch (final InterruptedException e)
         {
-            // empty
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e)
+        {
+            // not completed exceptionally
         }
+        catch (final TimeoutException e)
+        {
+            logger.warning("waitForCanceler() goodbyes not sent in time");
+        }
+    }
 
+    /**
+     * Returns a future of the API, which completes once the goodbyes of a
+     * canceler have been sent.
+     */
+    private CompletableFuture whenCanceled(Canceler canceler)
+    {
+        final CompletableFuture future = new CompletableFuture();
+        canceler.getFuture().whenComplete(new BiConsumer()
+        {
+            public void accept(Object result, Object failure)
+            {
+                complete(future, null);
+            }
+        });
+        return future;
     }
 
     /**
@@ -779,7 +1652,7 @@ public class JmDNSImpl extends JmDNS
      */
     public void registerServiceType(String type)
     {
-        final String name = type.toLowerCase();
+        final String name = DNSNameTable.getKey(type);
         if (serviceTypes.get(name) == null)
         {
             if ((type.indexOf("._mdns._udp.") < 0) && !type.endsWith(".in-addr.arpa."))
@@ -792,7 +1665,7 @@ public class JmDNSImpl extends JmDNS
                 }
                 for (final Iterator iterator = list.iterator(); iterator.hasNext();)
                 {
-                    ((ServiceTypeListener) iterator.next()).serviceTypeAdded(new ServiceEventImpl(
+                    dispatcher.serviceTypeAdded((ServiceTypeListener) iterator.next(), new ServiceEventImpl(
                             this, type, null, null));
                 }
             }
@@ -816,7 +1689,7 @@ public class JmDNSImpl extends JmDNS
             collision = false;
 
             // Check for collision in cache
-            for (DNSCache.CacheNode j = cache.find(host.getName().toLowerCase()); j != null; j = j
+            for (DNSCache.CacheNode j = cache.find(host.getName()); j != null; j = j
                     .next())
             {
                 if (false)
@@ -856,7 +1729,7 @@ public class JmDNSImpl extends JmDNS
             collision = false;
 
             // Check for collision in cache
-            for (DNSCache.CacheNode j = cache.find(info.getQualifiedName().toLowerCase()); j != null; j = j
+            for (DNSCache.CacheNode j = cache.find(info.getQualifiedName()); j != null; j = j
                     .next())
             {
                 final DNSRecord a = (DNSRecord) j.getValue();
@@ -881,7 +1754,7 @@ public class JmDNSImpl extends JmDNS
             }
 
             // Check for collision with other service infos published by JmDNS
-            final Object selfService = services.get(info.getQualifiedName().toLowerCase());
+            final Object selfService = services.get(DNSNameTable.getKey(info.getQualifiedName()));
             if (selfService != null && selfService != info)
             {
                 info.setName(incrementName(info.getName()));
@@ -926,10 +1799,7 @@ public class JmDNSImpl extends JmDNS
         final long now = System.currentTimeMillis();
 
         // add the new listener
-        synchronized (this)
-        {
-            listeners.add(listener);
-        }
+        listeners.add(listener, question);
 
         // report existing matched records
         if (question != null)
@@ -951,10 +1821,26 @@ public class JmDNSImpl extends JmDNS
      */
     public void removeListener(DNSListener listener)
     {
-        synchronized (this)
-        {
-            listeners.remove(listener);
-        }
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds a question to a listener which has already been added, without
+     * reporting the matching records of the cache. Does nothing if the
+     * listener has been removed.
+     */
+    void addListenerQuestion(DNSListener listener, DNSQuestion question)
+    {
+        listeners.addIfRegistered(listener, question);
+    }
+
+    /**
+     * Removes a question from a listener, which no longer wants the records
+     * answering it.
+     */
+    void removeListenerQuestion(DNSListener listener, DNSQuestion question)
+    {
+        listeners.remove(listener, question);
     }
 
     // Remind: Method updateRecord should receive a better name.
@@ -963,24 +1849,14 @@ public class JmDNSImpl extends JmDNS
      */
     public void updateRecord(long now, DNSRecord rec)
     {
-        // We do not want to block the entire DNS while we are updating the
-        // record for each listener (service info)
-        List listenerList = null;
-        synchronized (this)
-        {
-            listenerList = new ArrayList(listeners);
-        }
-        for (final Iterator iterator = listenerList.iterator(); iterator.hasNext();)
-        {
-            final DNSListener listener = (DNSListener) iterator.next();
-            listener.updateRecord(this, now, rec);
-        }
+        // Only the listeners with a matching question get the record
+        listeners.updateRecord(this, now, rec);
         if (rec.type == DNSConstants.TYPE_PTR || rec.type == DNSConstants.TYPE_SRV)
         {
             List serviceListenerList = null;
             synchronized (serviceListeners)
             {
-                serviceListenerList = (List) serviceListeners.get(rec.name.toLowerCase());
+                serviceListenerList = (List) serviceListeners.get(rec.getKey());
                 // Iterate on a copy in case listeners will modify it
                 if (serviceListenerList != null)
                 {
@@ -1001,7 +1877,7 @@ public class JmDNSImpl extends JmDNS
                     for (final Iterator iterator = serviceListenerList.iterator(); iterator
                             .hasNext();)
                     {
-                        ((ServiceListener) iterator.next()).serviceAdded(event);
+                        dispatcher.serviceAdded((ServiceListener) iterator.next(), event);
                     }
                 }
                 else
@@ -1012,13 +1888,39 @@ public class JmDNSImpl extends JmDNS
                     for (final Iterator iterator = serviceListenerList.iterator(); iterator
                             .hasNext();)
                     {
-                        ((ServiceListener) iterator.next()).serviceRemoved(event);
+                        dispatcher.serviceRemoved((ServiceListener) iterator.next(), event);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Handle an incoming message, received from the given address and port.
+     */
+    void handleMessage(DNSIncoming msg, InetAddress addr, int port, HostInfo host) throws IOException
+    {
+        synchronized (ioLock)
+        {
+            if (msg.isQuery())
+            {
+                if (port != DNSConstants.MDNS_PORT)
+                {
+                    handleQuery(msg, addr, port, host);
+                }
+                else
+                {
+                    handleQuestions(msg, addr);
+                }
+                handleQuery(msg, group, DNSConstants.MDNS_PORT, host);
+            }
+            else
+            {
+                handleResponse(msg);
+            }
+        }
+    }
+
     /**
      * Handle an incoming response. Cache answers, and pass them on to the
      * appropriate questions.
@@ -1030,62 +1932,66 @@ public class JmDNSImpl extends JmDNS
         boolean hostConflictDetected = false;
         boolean serviceConflictDetected = false;
 
-        for (final Iterator i = msg.answers.iterator(); i.hasNext();)
+        final DNSIncoming.RecordView view = msg.getRecordView();
+        for (int index = 0, n = msg.getNumberOfRecords(); index < n; index++)
         {
+            view.moveTo(index);
             boolean isInformative = false;
-            DNSRecord rec = (DNSRecord) i.next();
-            final boolean expired = rec.isExpired(now);
+            final boolean expired = view.isExpired(now);
 
-            // update the cache
-            synchronized (cache)
+            // update the cache. The record is only created if the cache does
+            // not already contain an identical record.
+            final DNSRecord c;
+            DNSRecord rec;
+
+            // Only store / use ONE TXT record in cache.
+            if (view.getType() == DNSConstants.TYPE_TXT)
             {
-                final DNSRecord c;
+                c = (DNSRecord) cache.get(view.getName(),
+                        DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN);
+            }
+            else
+            {
+                c = cache.get(view);
+            }
 
-                // Only store / use ONE TXT record in cache.
-                if (rec instanceof DNSRecord.Text)
+            if (c != null)
+            {
+                if (expired)
                 {
-                    c = (DNSRecord) cache.get(rec.getName(),
-                            DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN);
+                    isInformative = true;
+                    rec = view.getRecord();
+                    cache.remove(c);
                 }
                 else
                 {
-                    c = (DNSRecord) cache.get(rec);
-                }
-
-                if (c != null)
-                {
-                    if (expired)
+                    // If a TXT entry is received, if it has changed
+                    // update the cache and inform the outside world.
+                    if (c instanceof DNSRecord.Text &&
+                            !c.sameValue(view))
                     {
                         isInformative = true;
+                        rec = view.getRecord();
                         cache.remove(c);
+                        cache.add(rec);
                     }
                     else
                     {
-                        // If a TXT entry is received, if it has changed
-                        // update the cache and inform the outside world.
-                        if (rec instanceof DNSRecord.Text &&
-                                !rec.sameValue(c))
-                        {
-                            isInformative = true;
-                            cache.remove(c);
-                            cache.add(rec);
-                        }
-                        else
-                        {
-                            c.resetTTL(rec);
-                            rec = c;
-                        }
+                        c.resetTTL(view.getTtl(), view.getReceivedTime());
+                        rec = c;
                     }
                 }
-                else
+            }
+            else
+            {
+                rec = view.getRecord();
+                if (!expired)
                 {
-                    if (!expired)
-                    {
-                        isInformative = true;
-                        cache.add(rec);
-                    }
+                    isInformative = true;
+                    cache.add(rec);
                 }
             }
+
             switch (rec.type)
             {
                 case DNSConstants.TYPE_PTR:
@@ -1121,21 +2027,24 @@ public class JmDNSImpl extends JmDNS
 
         if (hostConflictDetected || serviceConflictDetected)
         {
-            new Prober(this).start(timer);
+            new Prober(this).start(scheduler);
         }
     }
 
     /**
      * Handle an incoming query. See if we can answer any part of it given our
      * service infos.
+     *
+     * @param host the host of the interface which received the query, or
+     *             null if it is not known
      */
-    void handleQuery(DNSIncoming in, InetAddress addr, int port) throws IOException
+    void handleQuery(DNSIncoming in, InetAddress addr, int port, HostInfo host) throws IOException
     {
         // Track known answers
         boolean hostConflictDetected = false;
         boolean serviceConflictDetected = false;
         final long expirationTime = System.currentTimeMillis() + DNSConstants.KNOWN_ANSWER_TTL;
-        for (final Iterator i = in.answers.iterator(); i.hasNext();)
+        for (final Iterator i = in.getAnswers().iterator(); i.hasNext();)
         {
             final DNSRecord answer = (DNSRecord) i.next();
             if ((answer.getType() == DNSConstants.TYPE_A)
@@ -1145,27 +2054,122 @@ public class JmDNSImpl extends JmDNS
             }
             else
             {
-                serviceConflictDetected |= answer.handleQuery(this, expirationTime);
+                serviceConflictDetected |= answer.handleQuery(this, expirationTime);
+            }
+        }
+
+        if (host == null)
+        {
+            // We do not know which address to answer with
+            logger.finer("handleQuery() query from an unknown link " + addr);
+        }
+        else if (plannedAnswer != null)
+        {
+            plannedAnswer.append(in);
+        }
+        else
+        {
+            if (in.isTruncated())
+            {
+                plannedAnswer = in;
+            }
+
+            new Responder(this, in, addr, port, host).start();
+        }
+
+        if (hostConflictDetected || serviceConflictDetected)
+        {
+            new Prober(this).start(scheduler);
+        }
+    }
+
+    /**
+     * Passes the questions of a multicast query of another host on to the
+     * continuous queries, which need not ask the same question again. (See
+     * Draft Cheshire chapter 7.3.)
+     */
+    private void handleQuestions(DNSIncoming in, InetAddress addr)
+    {
+        // With several interfaces, the question has only been asked on one
+        // of them.
+        if (addr == null || hosts.length > 1 || addr.equals(localHost.getAddress()))
+        {
+            return;
+        }
+        for (final Iterator i = in.getQuestions().iterator(); i.hasNext();)
+        {
+            final DNSQuestion question = (DNSQuestion) i.next();
+            if (question.getType() == DNSConstants.TYPE_PTR)
+            {
+                final Querier querier = getQuerier(question.getName());
+                if (querier != null)
+                {
+                    querier.questionAsked(in, question);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the continuous query for the PTR records of a name, or null if
+     * there is none.
+     */
+    private Querier getQuerier(String name)
+    {
+        final String key = DNSNameTable.getKey(name);
+        synchronized (serviceResolvers)
+        {
+            if (typeResolver != null && key.equals(TypeResolver.SERVICE_TYPES))
+            {
+                return typeResolver;
             }
+            return (Querier) serviceResolvers.get(key);
         }
+    }
 
-        if (plannedAnswer != null)
-        {
-            plannedAnswer.append(in);
-        }
-        else
+    /**
+     * Starts the continuous queries over, after the cache has been cleared,
+     * or to validate the records of the cache after a recovery.
+     */
+    private void restartQueriers()
+    {
+        synchronized (serviceResolvers)
         {
-            if (in.isTruncated())
+            for (final Iterator i = serviceResolvers.entrySet().iterator(); i.hasNext();)
             {
-                plannedAnswer = in;
+                final Map.Entry entry = (Map.Entry) i.next();
+                final ServiceResolver resolver = (ServiceResolver) entry.getValue();
+                resolver.cancel();
+                final ServiceResolver restarted = new ServiceResolver(this, resolver.getName());
+                entry.setValue(restarted);
+                restarted.start(scheduler);
+            }
+            if (typeResolver != null)
+            {
+                typeResolver.cancel();
+                typeResolver = new TypeResolver(this);
+                typeResolver.start(scheduler);
             }
-
-            new Responder(this, in, addr, port).start();
         }
+    }
 
-        if (hostConflictDetected || serviceConflictDetected)
+    /**
+     * Cancels the continuous queries.
+     */
+    private void cancelQueriers()
+    {
+        synchronized (serviceResolvers)
         {
-            new Prober(this).start(timer);
+            for (final Iterator i = serviceResolvers.values().iterator(); i.hasNext();)
+            {
+                ((ServiceResolver) i.next()).cancel();
+            }
+            serviceResolvers.clear();
+            if (typeResolver != null)
+            {
+                typeResolver.cancel();
+                typeResolver = null;
+            }
         }
     }
 
@@ -1178,21 +2182,17 @@ public class JmDNSImpl extends JmDNS
     {
         if (out == null)
         {
-            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-        }
-        try
-        {
-            out.addAnswer(in, rec);
+            out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
         }
-        catch (final IOException e)
+        if (!rec.suppressedBy(in) && !out.offerAnswer(rec, 0))
         {
-            out.flags |= DNSConstants.FLAGS_TC;
-            out.id = in.id;
-            out.finish();
+            // The answer continues in a new message. Responses are not
+            // truncated, only queries are. (See Draft Cheshire chapter 18.5.)
             send(out);
+            out.release();
 
-            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-            out.addAnswer(in, rec);
+            out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
+            out.addAnswer(rec, 0);
         }
         return out;
     }
@@ -1201,47 +2201,114 @@ public class JmDNSImpl extends JmDNS
      * Send an outgoing multicast DNS message.
      */
     public void send(DNSOutgoing out) throws IOException
+    {
+        send(out, null);
+    }
+
+    /**
+     * Sends a message on the interface of a host, or on all the interfaces
+     * if the host is null.
+     */
+    public void send(DNSOutgoing out, HostInfo host) throws IOException
     {
         out.finish();
         if (!out.isEmpty())
         {
-            final DatagramPacket packet = new DatagramPacket(out.data, out.off, group,
-                    DNSConstants.MDNS_PORT);
+            final DatagramPacket packet = out.getPacket(group, DNSConstants.MDNS_PORT);
 
-            try
+            if (logger.isLoggable(Level.FINEST))
             {
-                final DNSIncoming msg = new DNSIncoming(packet);
-                logger.finest("send() JmDNS out:" + msg.print(true));
+                try
+                {
+                    final DNSIncoming msg = new DNSIncoming(packet);
+                    logger.finest("send() JmDNS out:" + msg.print(true));
+                }
+                catch (final IOException e)
+                {
+                    logger.throwing(getClass().toString(),
+                            "send(DNSOutgoing) - JmDNS can not parse what it sends!!!", e);
+                }
             }
-            catch (final IOException e)
+            if (hosts.length > 1)
             {
-                logger.throwing(getClass().toString(),
-                        "send(DNSOutgoing) - JmDNS can not parse what it sends!!!", e);
+                for (int i = 0; i < hosts.length; i++)
+                {
+                    if ((host == null) ? isFirstOnLink(i) : (host == hosts[i]))
+                    {
+                        send(out, getNetworkInterface(hosts[i]), getGroupAddress(hosts[i]));
+                    }
+                }
+                return;
             }
             final MulticastSocket ms = socket;
             if (ms != null && !ms.isClosed())
                 ms.send(packet);
+            final DatagramChannel dc = channel;
+            if (dc != null && dc.isOpen())
+            {
+                if (dc.send(out.getBuffer(), groupAddress) == 0)
+                {
+                    logger.warning("send() Channel buffer full, message dropped");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a message to a group on one interface. The transport is shared by
+     * the interfaces, so its interface is set while it sends.
+     */
+    private void send(DNSOutgoing out, NetworkInterface ni, InetSocketAddress to) throws IOException
+    {
+        final MulticastSocket ms = socket;
+        if (ms != null && !ms.isClosed())
+        {
+            synchronized (ms)
+            {
+                ms.setNetworkInterface(ni);
+                ms.send(out.getPacket(to.getAddress(), to.getPort()));
+            }
+        }
+        final DatagramChannel dc = channel;
+        if (dc != null && dc.isOpen())
+        {
+            synchronized (dc)
+            {
+                dc.setOption(StandardSocketOptions.IP_MULTICAST_IF, ni);
+                if (dc.send(out.getBuffer(), to) == 0)
+                {
+                    logger.warning("send() Channel buffer full, message dropped");
+                }
+            }
         }
     }
 
     public void startAnnouncer()
     {
-        new Announcer(this).start(timer);
+        new Announcer(this).start(scheduler);
     }
 
     public void startTextAnnouncer()
     {
-        new TextAnnouncer(this).start(timer);
+        new TextAnnouncer(this).start(scheduler);
     }
 
     public void startRenewer()
     {
-        new Renewer(this).start(timer);
+        new Renewer(this).start(scheduler);
+    }
+
+    public void schedule(DNSTask task, int delay)
+    {
+        scheduler.schedule(task, delay);
     }
 
-    public void schedule(TimerTask task, int delay)
+    /**
+     * Returns the scheduler which runs the tasks of this instance.
+     */
+    public TaskScheduler getScheduler()
     {
-        timer.schedule(task, delay);
+        return scheduler;
     }
 
     // REMIND: Why is this not an anonymous inner class?
@@ -1258,52 +2325,237 @@ public class JmDNSImpl extends JmDNS
     }
 
     /**
-     * Recover jmdns when there is an error.
+     * Recover jmdns when there is an error. The recovery is done by the
+     * scheduler, and the errors which happen until it is done are handled by
+     * the same recovery.
      */
     public void recover()
     {
         logger.finer("recover()");
-        // We have an IO error so lets try to recover if anything happens lets
-        // close it.
-        // This should cover the case of the IP address changing under our feet
-        if (DNSState.CANCELED != getState())
+        if (DNSState.CANCELED != getState() && recovering.compareAndSet(false, true))
         {
-            synchronized (this)
-            { // Synchronize only if we are not already in process to prevent
-                // dead locks
-                //
+            final Recovery recovery = new Recovery();
+            scheduler.schedule(recovery, 0);
+            if (recovery.isCanceled())
+            {
+                // the scheduler has been shut down
+                recovering.set(false);
+            }
+        }
+    }
+
+    /**
+     * Recovers from an IO error, and tries again later if the transport can
+     * not be reopened yet.
+     * <p/>
+     * A restart takes two runs: the first one cancels the services and starts
+     * their goodbyes, the second one, once the goodbyes have been sent,
+     * restarts JmDNS. The scheduler is not blocked in between.
+     */
+    private class Recovery extends DNSTask
+    {
+        private final long start = System.currentTimeMillis();
+
+        /**
+         * The services to register again after a restart, once they have
+         * been canceled.
+         */
+        private Collection oldServiceInfos;
+
+        public boolean isSerial()
+        {
+            return true;
+        }
+
+        public void run()
+        {
+            boolean done = true;
+            try
+            {
+                if (INCREMENTAL_RECOVERY)
+                {
+                    done = reopen();
+                }
+                else if (oldServiceInfos == null)
+                {
+                    final Canceler canceler = stop();
+                    if (canceler != null)
+                    {
+                        resumeAfter(canceler);
+                        return;
+                    }
+                    if (oldServiceInfos != null)
+                    {
+                        restart(oldServiceInfos);
+                    }
+                }
+                else
+                {
+                    restart(oldServiceInfos);
+                }
+            }
+            catch (final RuntimeException exception)
+            {
+                logger.log(Level.WARNING, "recover() exception ", exception);
+            }
+            if (!done)
+            {
+                scheduler.schedule(this, RECOVERY_RETRY_INTERVAL);
+                if (!isCanceled())
+                {
+                    return;
+                }
+            }
+            recovering.set(false);
+            final long time = System.currentTimeMillis() - start;
+            recoveries.incrementAndGet();
+            lastRecoveryTime = time;
+            if (time > maxRecoveryTime)
+            {
+                maxRecoveryTime = time;
+            }
+        }
+
+        /**
+         * Stops JmDNS before a restart: the services are canceled, and their
+         * goodbyes are started. The transport stays open until they are sent.
+         *
+         * @return the canceler sending the goodbyes, or null if there is
+         *  nothing to wait for
+         */
+        private Canceler stop()
+        {
+            synchronized (JmDNSImpl.this)
+            {
+                if (DNSState.CANCELED == getState())
+                {
+                    return null;
+                }
                 logger.finer("recover() Cleanning up");
                 // Stop JmDNS
                 setState(DNSState.CANCELED); // This protects against recursive
                 // calls
 
                 // We need to keep a copy for reregistration
-                final Collection oldServiceInfos = new ArrayList(getServices().values());
+                oldServiceInfos = new ArrayList(getServices().values());
 
                 // Cancel all services
-                unregisterAllServices();
-                disposeServiceCollectors();
-                //
-                // close multicast socket
-                closeMulticastSocket();
-                //
-                cache.clear();
-                logger.finer("recover() All is clean");
-                //
-                // All is clear now start the services
-                //
-                try
+                return cancelAll(false, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+            }
+        }
+
+        /**
+         * Runs the recovery again once the goodbyes have been sent, or have
+         * been given up. Goodbyes which are given up are not sent later, when
+         * the services have been registered again.
+         */
+        private void resumeAfter(final Canceler canceler)
+        {
+            final DNSTask timer = new DNSTask()
+            {
+                public void run()
                 {
-                    openMulticastSocket(getLocalHost());
-                    start(oldServiceInfos);
+                    logger.warning("recover() goodbyes not sent in time");
+                    canceler.cancel();
                 }
-                catch (final Exception exception)
+            };
+            canceler.getFuture().whenComplete(new BiConsumer()
+            {
+                public void accept(Object result, Object failure)
                 {
-                    logger.log(Level.WARNING, "recover() Start services exception ", exception);
+                    timer.cancel();
+                    scheduler.schedule(Recovery.this, 0);
+                    if (isCanceled())
+                    {
+                        // the scheduler has been shut down
+                        recovering.set(false);
+                    }
                 }
-                logger.log(Level.WARNING, "recover() We are back!");
+            });
+            scheduler.schedule(timer, 4 * DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        }
+    }
+
+    /**
+     * Reopens the transport in place. The cache is kept, and the continuous
+     * queries are started over to validate it. The services and the host name
+     * are only probed again if the address of the host has changed.
+     *
+     * @return false if the transport could not be reopened
+     */
+    private synchronized boolean reopen()
+    {
+        if (DNSState.CANCELED == getState())
+        {
+            return true;
+        }
+        logger.finer("recover() Reopening the transport");
+        closeMulticastSocket();
+        boolean addressChanged = false;
+        for (int i = 0; i < hosts.length; i++)
+        {
+            addressChanged |= hosts[i].updateAddress();
+        }
+        try
+        {
+            openMulticastSocket();
+            startListener();
+        }
+        catch (final IOException exception)
+        {
+            logger.log(Level.WARNING, "recover() Open transport exception ", exception);
+            closeMulticastSocket();
+            return false;
+        }
+        if (addressChanged)
+        {
+            addressChanges.incrementAndGet();
+            for (final Iterator i = getServices().values().iterator(); i.hasNext();)
+            {
+                final ServiceInfoImpl info = (ServiceInfoImpl) i.next();
+                info.addr = localHost.getAddress();
+                info.revertState();
+            }
+            revertState();
+            new Prober(this).start(scheduler);
+        }
+        restartQueriers();
+        logger.log(Level.WARNING, "recover() We are back!" + (addressChanged ? " Probing the new address " + localHost.getAddress() : ""));
+        return true;
+    }
+
+    /**
+     * Restarts JmDNS, once the services have been canceled and their goodbyes
+     * sent: the transport is reopened, the cache is cleared, and the services
+     * are registered again.
+     */
+    private synchronized void restart(Collection oldServiceInfos)
+    {
+        disposeBrowsers();
+        //
+        // close multicast socket
+        closeMulticastSocket();
+        //
+        cache.clear();
+        restartQueriers();
+        logger.finer("recover() All is clean");
+        //
+        // All is clear now start the services
+        //
+        try
+        {
+            for (int i = 0; i < hosts.length; i++)
+            {
+                hosts[i].updateAddress();
             }
+            openMulticastSocket();
+            start(oldServiceInfos);
+        }
+        catch (final Exception exception)
+        {
+            logger.log(Level.WARNING, "recover() Start services exception ", exception);
         }
+        logger.log(Level.WARNING, "recover() We are back!");
     }
 
     /**
@@ -1313,21 +2565,40 @@ public class JmDNSImpl extends JmDNS
     {
         if (getState() != DNSState.CANCELED)
         {
+            final Canceler canceler;
             synchronized (this)
             { // Synchronize only if we are not already in process to prevent
                 // dead locks
+                if (getState() == DNSState.CANCELED)
+                {
+                    return;
+                }
                 // Stop JmDNS
                 setState(DNSState.CANCELED); // This protects against recursive
                 // calls
 
-                unregisterAllServices();
-                disposeServiceCollectors();
+                // Say goodbye for the services and the host, twice within
+                // the time we wait for it
+                canceler = cancelAll(true, Math.min(DNSConstants.ANNOUNCE_WAIT_INTERVAL, CLOSE_TIMEOUT / 2));
+            }
+            // Wait without the lock: the tasks which run before the canceler
+            // may need it.
+            if (CLOSE_TIMEOUT > 0)
+            {
+                waitForCanceler(canceler, CLOSE_TIMEOUT);
+            }
+            synchronized (this)
+            {
+                disposeBrowsers();
+                cancelQueriers();
+                cancelResolutions();
 
                 // close socket
                 closeMulticastSocket();
+                pipeline.close();
 
-                // Stop the timer
-                timer.cancel();
+                // Stop the scheduler
+                scheduler.shutdown();
 
                 // remove the shutdown hook
                 if (shutdown != null)
@@ -1382,18 +2653,13 @@ public class JmDNSImpl extends JmDNS
         aLog.append("\n");
         aLog.append(cache.toString());
         aLog.append("\n");
-        aLog.append("\t---- Service Collectors ----");
-        if (serviceCollectors != null)
+        aLog.append("\t---- Browsers ----");
+        synchronized (browsers)
         {
-            synchronized (serviceCollectors)
+            for (final Iterator k = browsers.keySet().iterator(); k.hasNext();)
             {
-                for (final Iterator k = serviceCollectors.keySet().iterator(); k.hasNext();)
-                {
-                    final Object key = k.next();
-                    aLog.append("\n\t\tService Collector: " + key + ": "
-                            + serviceCollectors.get(key));
-                }
-                serviceCollectors.clear();
+                final Object key = k.next();
+                aLog.append("\n\t\tBrowser: " + key + ": " + browsers.get(key));
             }
         }
         return aLog.toString();
@@ -1405,152 +2671,68 @@ public class JmDNSImpl extends JmDNS
     public ServiceInfo[] list(String type)
     {
         // Implementation note: The first time a list for a given type is
-        // requested, a ServiceCollector is created which collects service
-        // infos. This greatly speeds up the performance of subsequent calls
-        // to this method. The caveats are, that 1) the first call to this
-        // method
-        // for a given type is slow, and 2) we spawn a ServiceCollector
-        // instance for each service type which increases network traffic a
-        // little.
-
-        ServiceCollector collector;
-
-        boolean newCollectorCreated;
-        synchronized (serviceCollectors)
-        {
-            collector = (ServiceCollector) serviceCollectors.get(type);
-            if (collector == null)
-            {
-                collector = new ServiceCollector(type);
-                serviceCollectors.put(type, collector);
-                addServiceListener(type, collector);
-                newCollectorCreated = true;
-            }
-            else
+        // requested, a browser is created which collects service infos, and
+        // keeps them up to date. Subsequent calls return its current view.
+        // If the cache knew no services, the first call waits for the
+        // answers to the queries of the browser.
+
+        final String lotype = DNSNameTable.getKey(type);
+        ServiceBrowserImpl browser;
+        boolean newBrowserCreated;
+        synchronized (browsers)
+        {
+            browser = (ServiceBrowserImpl) browsers.get(lotype);
+            newBrowserCreated = (browser == null);
+            if (newBrowserCreated)
             {
-                newCollectorCreated = false;
+                browser = (ServiceBrowserImpl) browse(type);
+                browsers.put(lotype, browser);
             }
         }
 
-        // After creating a new ServiceCollector, we collect service infos for
-        // 200 milliseconds. This should be enough time, to get some service
-        // infos from the network.
-        if (newCollectorCreated)
+        ServiceInfo[] services = browser.getServices();
+        if (newBrowserCreated && services.length == 0)
         {
             try
             {
-                Thread.sleep(200);
+                services = browser.waitForServices(200, 1000);
             }
             catch (final InterruptedException e)
             {
+                Thread.currentThread().interrupt();
             }
         }
-
-        return collector.list();
+        return services;
     }
 
     /**
-     * This method disposes all ServiceCollector instances which have been
-     * created by calls to method <code>list(type)</code>.
-     * 
-     * @see #list
+     * @see javax.jmdns.JmDNS#browse(java.lang.String)
      */
-    private void disposeServiceCollectors()
+    public ServiceBrowser browse(String type)
     {
-        logger.finer("disposeServiceCollectors()");
-        synchronized (serviceCollectors)
-        {
-            for (final Iterator i = serviceCollectors.values().iterator(); i.hasNext();)
-            {
-                final ServiceCollector collector = (ServiceCollector) i.next();
-                removeServiceListener(collector.type, collector);
-            }
-            serviceCollectors.clear();
-        }
+        final ServiceBrowserImpl browser = new ServiceBrowserImpl(this, type);
+        addServiceListener(type, browser);
+        return browser;
     }
 
     /**
-     * Instances of ServiceCollector are used internally to speed up the
-     * performance of method <code>list(type)</code>.
+     * This method closes all browsers which have been created by calls to
+     * method <code>list(type)</code>.
      * 
      * @see #list
      */
-    private static class ServiceCollector implements ServiceListener
+    private void disposeBrowsers()
     {
-        private static Logger logger = Logger.getLogger(ServiceCollector.class.getName());
-        /**
-         * A set of collected service instance names.
-         */
-        private final Map infos = Collections.synchronizedMap(new HashMap());
-
-        public String type;
-
-        public ServiceCollector(String type)
-        {
-            this.type = type;
-        }
-
-        /**
-         * A service has been added.
-         */
-        public void serviceAdded(ServiceEvent event)
-        {
-            synchronized (infos)
-            {
-                event.getDNS().requestServiceInfo(event.getType(), event.getName(), 0);
-            }
-        }
-
-        /**
-         * A service has been removed.
-         */
-        public void serviceRemoved(ServiceEvent event)
-        {
-            synchronized (infos)
-            {
-                infos.remove(event.getName());
-            }
-        }
-
-        /**
-         * A service hase been resolved. Its details are now available in the
-         * ServiceInfo record.
-         */
-        public void serviceResolved(ServiceEvent event)
+        logger.finer("disposeBrowsers()");
+        synchronized (browsers)
         {
-            synchronized (infos)
+            for (final Iterator i = browsers.values().iterator(); i.hasNext();)
             {
-                infos.put(event.getName(), event.getInfo());
+                ((ServiceBrowserImpl) i.next()).close();
             }
+            browsers.clear();
         }
-
-        /**
-         * Returns an array of all service infos which have been collected by
-         * this ServiceCollector.
-         */
-        public ServiceInfoImpl[] list()
-        {
-            synchronized (infos)
-            {
-                return (ServiceInfoImpl[]) infos.values()
-                        .toArray(new ServiceInfoImpl[infos.size()]);
-            }
-        }
-
-        public String toString()
-        {
-            final StringBuffer aLog = new StringBuffer();
-            synchronized (infos)
-            {
-                for (final Iterator k = infos.keySet().iterator(); k.hasNext();)
-                {
-                    final Object key = k.next();
-                    aLog.append("\n\t\tService: " + key + ": " + infos.get(key));
-                }
-            }
-            return aLog.toString();
-        }
-    };
+    }
 
     private static String toUnqualifiedName(String type, String qualifiedName)
     {
@@ -1569,19 +2751,28 @@ public class JmDNSImpl extends JmDNS
         this.state = state;
     }
 
-    public void setTask(TimerTask task)
+    public void setTask(DNSTask task)
     {
         this.task = task;
     }
 
-    public TimerTask getTask()
+    public DNSTask getTask()
     {
         return task;
     }
 
     public Map getServices()
     {
-        return services;
+        return services.asMap();
+    }
+
+    /**
+     * Returns the registered services of a type, in any state. The array must
+     * not be modified.
+     */
+    public ServiceInfoImpl[] getServices(String type)
+    {
+        return services.getServices(type);
     }
 
     public void setLastThrottleIncrement(long lastThrottleIncrement)
@@ -1639,23 +2830,56 @@ public class JmDNSImpl extends JmDNS
         return serviceTypes;
     }
 
-    public void setClosed(boolean closed)
+    public MulticastSocket getSocket()
     {
-        this.closed = closed;
+        return socket;
     }
 
-    public boolean isClosed()
+    /**
+     * Returns the pipeline which processes the received packets. It provides
+     * queue depth and drop metrics.
+     */
+    public PacketPipeline getPipeline()
     {
-        return closed;
+        return pipeline;
     }
 
-    public MulticastSocket getSocket()
+    public InetAddress getGroup()
     {
-        return socket;
+        return group;
     }
 
-    public InetAddress getGroup()
+    /**
+     * Returns the number of times JmDNS has recovered from an IO error.
+     */
+    public long getRecoveryCount()
     {
-        return group;
+        return recoveries.get();
+    }
+
+    /**
+     * Returns the number of recoveries which found a new address for the
+     * host, and probed the services again.
+     */
+    public long getAddressChangeCount()
+    {
+        return addressChanges.get();
+    }
+
+    /**
+     * Returns the milliseconds the last recovery took, including the retries
+     * until the transport could be reopened.
+     */
+    public long getLastRecoveryTime()
+    {
+        return lastRecoveryTime;
+    }
+
+    /**
+     * Returns the longest time a recovery took, in milliseconds.
+     */
+    public long getMaxRecoveryTime()
+    {
+        return maxRecoveryTime;
     }
 }
@@ -0,0 +1,103 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The known answers of a query, hashed by name, type, class and value, so
+ * that each answer of a response is checked against them in constant time.
+ * <p/>
+ * According to draft-cheshire-dnsext-multicastdns.txt chapter 7.1, an answer
+ * is suppressed by a known answer which is the same record, with a TTL of at
+ * least half the TTL of the answer. Names are compared ignoring case.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class KnownAnswers
+{
+    final static KnownAnswers EMPTY = new KnownAnswers();
+
+    /**
+     * Keys are Key's, values are the known answers with the highest TTL.
+     */
+    private final Map answers;
+
+    private KnownAnswers()
+    {
+        answers = new HashMap(1);
+    }
+
+    /**
+     * Collects the known answers of the first records of a list.
+     */
+    KnownAnswers(List records, int count)
+    {
+        answers = new HashMap(count * 2);
+        for (int i = 0; i < count; i++)
+        {
+            final DNSRecord rec = (DNSRecord) records.get(i);
+            if (rec != null)
+            {
+                final Key key = new Key(rec);
+                final DNSRecord known = (DNSRecord) answers.get(key);
+                if (known == null || known.getTtl() < rec.getTtl())
+                {
+                    answers.put(key, rec);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if an answer is suppressed by one of the known answers.
+     */
+    boolean suppresses(DNSRecord answer)
+    {
+        if (answers.isEmpty())
+        {
+            return false;
+        }
+        final DNSRecord known = (DNSRecord) answers.get(new Key(answer));
+        return known != null && known.getTtl() > answer.getTtl() / 2;
+    }
+
+    int size()
+    {
+        return answers.size();
+    }
+
+    /**
+     * Identifies a record by its name, type, class and value.
+     */
+    private final static class Key
+    {
+        private final DNSRecord record;
+        private final int hash;
+
+        Key(DNSRecord record)
+        {
+            this.record = record;
+            this.hash = ((record.key.hashCode() * 31 + record.type) * 31 + record.clazz) * 31 + record.valueHashCode();
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final DNSRecord other = ((Key) obj).record;
+                return hash == ((Key) obj).hash && record.type == other.type && record.clazz == other.clazz && record.key.equals(other.key) && record.sameValue(other);
+            }
+            return false;
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceListener;
+import javax.jmdns.ServiceTypeListener;
+
+/**
+ * Delivers service events to the ServiceListener's and ServiceTypeListener's
+ * of a JmDNS instance.
+ * <p/>
+ * Without an executor, the listeners are called on the thread which
+ * produced the event, as they always were. With an executor, the listeners
+ * are called by the executor, so that they do not hold up the processing of
+ * incoming packets. If delivery is ordered, each listener receives its events
+ * one at a time, in the order in which they were produced. Resolved events
+ * for a service which have not been delivered yet are coalesced: a burst of
+ * TXT updates results in a single event carrying the latest information. A
+ * resolved event is never coalesced across an added or removed event of the
+ * same service.
+ *
+ * @see javax.jmdns.JmDNS#setListenerExecutor(Executor, boolean)
+ */
+final class ListenerDispatcher
+{
+    private static Logger logger = Logger.getLogger(ListenerDispatcher.class.getName());
+
+    private volatile Executor executor;
+    private volatile boolean ordered = true;
+
+    /**
+     * The serial executors of the listeners, if delivery is ordered.
+     */
+    private final Map serialExecutors = new IdentityHashMap();
+
+    /**
+     * The removed listeners whose serial executors still have events to
+     * deliver. Their executors are kept until they are idle, so that a
+     * listener which is added again receives its events in order.
+     */
+    private final Set removedListeners = Collections.newSetFromMap(new IdentityHashMap());
+
+    /**
+     * Resolved events waiting to be delivered. Keys are ResolvedKey's, values
+     * are the ResolvedSlot's of the events which are on their way.
+     */
+    private final Map pendingResolved = new HashMap();
+
+    void setExecutor(Executor executor, boolean ordered)
+    {
+        synchronized (serialExecutors)
+        {
+            this.executor = executor;
+            this.ordered = ordered;
+            serialExecutors.clear();
+            removedListeners.clear();
+        }
+    }
+
+    Executor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Forgets a listener which has been removed, once the events queued for
+     * it have been delivered.
+     */
+    void remove(Object listener)
+    {
+        synchronized (serialExecutors)
+        {
+            final SerialExecutor serial = (SerialExecutor) serialExecutors.get(listener);
+            if (serial == null || serial.isIdle())
+            {
+                serialExecutors.remove(listener);
+            }
+            else
+            {
+                removedListeners.add(listener);
+            }
+        }
+    }
+
+    void serviceAdded(final ServiceListener listener, final ServiceEvent event)
+    {
+        endResolved(listener, event);
+        dispatch(listener, new Runnable()
+        {
+            public void run()
+            {
+                listener.serviceAdded(event);
+            }
+        });
+    }
+
+    void serviceRemoved(final ServiceListener listener, final ServiceEvent event)
+    {
+        endResolved(listener, event);
+        dispatch(listener, new Runnable()
+        {
+            public void run()
+            {
+                listener.serviceRemoved(event);
+            }
+        });
+    }
+
+    void serviceResolved(final ServiceListener listener, final ServiceEvent event)
+    {
+        if (executor == null)
+        {
+            listener.serviceResolved(event);
+            return;
+        }
+        final ResolvedKey key = new ResolvedKey(listener, event.getType(), event.getName());
+        final ResolvedSlot slot;
+        synchronized (pendingResolved)
+        {
+            final ResolvedSlot pending = (ResolvedSlot) pendingResolved.get(key);
+            if (pending != null)
+            {
+                // An event for this service is already on its way, it will
+                // carry the latest event instead.
+                pending.event = event;
+                return;
+            }
+            slot = new ResolvedSlot(event);
+            pendingResolved.put(key, slot);
+        }
+        dispatch(listener, new Runnable()
+        {
+            public void run()
+            {
+                ServiceEvent latest;
+                synchronized (pendingResolved)
+                {
+                    if (pendingResolved.get(key) == slot)
+                    {
+                        pendingResolved.remove(key);
+                    }
+                    latest = slot.event;
+                }
+                listener.serviceResolved(latest);
+            }
+        });
+    }
+
+    /**
+     * Keeps the resolved event of a service which is on its way from taking
+     * later resolved events, which must follow an added or removed event.
+     */
+    private void endResolved(ServiceListener listener, ServiceEvent event)
+    {
+        if (executor != null)
+        {
+            synchronized (pendingResolved)
+            {
+                pendingResolved.remove(new ResolvedKey(listener, event.getType(), event.getName()));
+            }
+        }
+    }
+
+    void serviceTypeAdded(final ServiceTypeListener listener, final ServiceEvent event)
+    {
+        dispatch(listener, new Runnable()
+        {
+            public void run()
+            {
+                listener.serviceTypeAdded(event);
+            }
+        });
+    }
+
+    private void dispatch(Object listener, Runnable task)
+    {
+        Executor target;
+        synchronized (serialExecutors)
+        {
+            target = executor;
+            if (!removedListeners.isEmpty())
+            {
+                purge();
+            }
+            if (target != null && ordered)
+            {
+                Executor serial = (Executor) serialExecutors.get(listener);
+                if (serial == null)
+                {
+                    serial = new SerialExecutor(target);
+                    serialExecutors.put(listener, serial);
+                }
+                target = serial;
+            }
+        }
+        if (target == null)
+        {
+            task.run();
+        }
+        else
+        {
+            target.execute(new Guard(task));
+        }
+    }
+
+    /**
+     * Forgets the serial executors of the removed listeners which have
+     * delivered all their events.
+     */
+    private void purge()
+    {
+        for (final Iterator i = removedListeners.iterator(); i.hasNext();)
+        {
+            final Object listener = i.next();
+            final SerialExecutor serial = (SerialExecutor) serialExecutors.get(listener);
+            if (serial == null || serial.isIdle())
+            {
+                serialExecutors.remove(listener);
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Keeps an exception thrown by a listener from breaking the executor.
+     */
+    private static final class Guard implements Runnable
+    {
+        private final Runnable task;
+
+        Guard(Runnable task)
+        {
+            this.task = task;
+        }
+
+        public void run()
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                logger.log(Level.WARNING, "run() listener exception ", e);
+            }
+        }
+    }
+
+    /**
+     * A resolved event on its way to a listener.
+     */
+    private static final class ResolvedSlot
+    {
+        ServiceEvent event;
+
+        ResolvedSlot(ServiceEvent event)
+        {
+            this.event = event;
+        }
+    }
+
+    /**
+     * Identifies the resolved events of a service for a listener.
+     */
+    private static final class ResolvedKey
+    {
+        private final Object listener;
+        private final String type;
+        private final String name;
+
+        ResolvedKey(Object listener, String type, String name)
+        {
+            this.listener = listener;
+            this.type = DNSNameTable.getKey(type);
+            this.name = (name != null) ? name.toLowerCase() : null;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof ResolvedKey)
+            {
+                ResolvedKey other = (ResolvedKey) obj;
+                return listener == other.listener && type.equals(other.type) && ((name == null) ? other.name == null : name.equals(other.name));
+            }
+            return false;
+        }
+
+        public int hashCode()
+        {
+            return System.identityHashCode(listener) + type.hashCode() + ((name != null) ? name.hashCode() : 0);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes the packets received by a JmDNS instance in three stages, which
+ * run in parallel:
+ * <ol>
+ * <li>the transport receives a packet into a pooled buffer and submits it,</li>
+ * <li>a pool of parser threads creates the DNSIncoming,</li>
+ * <li>a single applier thread hands the messages to JmDNSImpl, in the order
+ * in which the packets were received.</li>
+ * </ol>
+ * A slow listener therefore no longer keeps the transport from receiving.
+ * <p/>
+ * The number of packets between the first and the last stage is bounded by
+ * <code>QUEUE_CAPACITY</code>. When a packet is submitted to a full pipeline,
+ * <code>OVERFLOW_POLICY</code> decides whether the transport waits, or whether
+ * the new or the oldest packet is dropped.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public final class PacketPipeline
+{
+    private static Logger logger = Logger.getLogger(PacketPipeline.class.getName());
+
+    /**
+     * Overflow policy: the transport waits until there is room.
+     */
+    public final static int OVERFLOW_BLOCK = 0;
+    /**
+     * Overflow policy: the packet which is submitted is dropped.
+     */
+    public final static int OVERFLOW_DROP_NEWEST = 1;
+    /**
+     * Overflow policy: the oldest packet which has not been handled yet is
+     * dropped.
+     */
+    public final static int OVERFLOW_DROP_OLDEST = 2;
+
+    /**
+     * Maximum number of packets in the pipeline of a JmDNS instance.
+     */
+    public static int QUEUE_CAPACITY = 256;
+
+    /**
+     * Number of parser threads of a JmDNS instance.
+     */
+    public static int PARSER_THREADS = 2;
+
+    /**
+     * What to do when a packet is submitted to a full pipeline. Multicast DNS
+     * repeats its messages, so dropping the oldest packet is the default.
+     * Blocking the transport makes the operating system drop packets instead.
+     */
+    public static int OVERFLOW_POLICY = OVERFLOW_DROP_OLDEST;
+
+    private final JmDNSImpl jmDNSImpl;
+    private final int policy;
+    private final ThreadPoolExecutor parsers;
+    private final BlockingQueue applyQueue;
+    private final Thread applier;
+    private volatile boolean closed;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int maxParseQueueSize;
+    private volatile int maxApplyQueueSize;
+
+    PacketPipeline(JmDNSImpl jmDNSImpl)
+    {
+        this.jmDNSImpl = jmDNSImpl;
+        this.policy = OVERFLOW_POLICY;
+        int capacity = Math.max(1, QUEUE_CAPACITY);
+        int threads = Math.max(1, PARSER_THREADS);
+        this.applyQueue = new ArrayBlockingQueue(capacity);
+        // A packet is only given to the parsers once it is in the apply
+        // queue, and it is taken out of the parse queue when it is dropped
+        // from the apply queue. The parse queue therefore holds at most one
+        // more packet than the apply queue, the one the applier waits for.
+        this.parsers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue(capacity + 1), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "JmDNS.PacketParser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.parsers.allowCoreThreadTimeOut(true);
+        this.applier = new Thread(new Applier(), "JmDNS.PacketApplier");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    /**
+     * A packet on its way through the pipeline.
+     * <p/>
+     * The buffer of the packet is used by the parser, and by the applier,
+     * which reads the records of the message. It is given back to the pool
+     * once both are done with it, or will never get to it.
+     */
+    private final class Packet implements Runnable
+    {
+        private final ByteBuffer buffer;
+        private final ByteBufferPool pool;
+        private final InetAddress addr;
+        private final int port;
+        /**
+         * The host of the interface which received the packet, or null.
+         */
+        private HostInfo host;
+        private DNSIncoming msg;
+        private boolean parsed;
+        private boolean dropped;
+        /**
+         * The parser and the applier, as long as they may use the buffer.
+         */
+        private int users = 2;
+
+        Packet(ByteBuffer buffer, ByteBufferPool pool, InetAddress addr, int port)
+        {
+            this.buffer = buffer;
+            this.pool = pool;
+            this.addr = addr;
+            this.port = port;
+        }
+
+        /**
+         * Parses the packet. This runs on a parser thread.
+         */
+        public void run()
+        {
+            DNSIncoming result = null;
+            synchronized (this)
+            {
+                if (dropped)
+                {
+                    parsed = true;
+                    notifyAll();
+                    done();
+                    return;
+                }
+            }
+            try
+            {
+                host = jmDNSImpl.getHost(addr);
+                // With several interfaces, the host of the packet tells on
+                // which one it was received, so there is no need to guess.
+                if (jmDNSImpl.getHosts().length > 1 || !host.shouldIgnorePacket(addr))
+                {
+                    result = new DNSIncoming(buffer, addr, port);
+                    if (logger.isLoggable(Level.FINEST))
+                    {
+                        logger.finest("PacketPipeline.run() JmDNS in:" + result.print(true));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.WARNING, "run() exception ", e);
+            }
+            catch (RuntimeException e)
+            {
+                logger.log(Level.WARNING, "run() exception ", e);
+            }
+            synchronized (this)
+            {
+                msg = result;
+                parsed = true;
+                notifyAll();
+                done();
+            }
+        }
+
+        /**
+         * Waits until the packet is parsed, and returns the message, or null
+         * if the packet is ignored, could not be parsed or has been dropped.
+         */
+        synchronized DNSIncoming await() throws InterruptedException
+        {
+            while (!parsed)
+            {
+                wait();
+            }
+            return dropped ? null : msg;
+        }
+
+        synchronized boolean isDropped()
+        {
+            return dropped;
+        }
+
+        /**
+         * Marks the packet as dropped, and counts it.
+         */
+        synchronized void drop()
+        {
+            if (!dropped)
+            {
+                dropped = true;
+                PacketPipeline.this.dropped.incrementAndGet();
+            }
+        }
+
+        /**
+         * Drops a packet which will not be parsed, because it could not be
+         * given to a parser or was taken out of the parse queue.
+         */
+        synchronized void unparsed()
+        {
+            drop();
+            parsed = true;
+            notifyAll();
+            done();
+        }
+
+        /**
+         * Called once by the parser and once by the applier, when they are
+         * done with the buffer.
+         */
+        synchronized void done()
+        {
+            if (--users == 0)
+            {
+                pool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Applies the parsed messages in order.
+     */
+    private final class Applier implements Runnable
+    {
+        public void run()
+        {
+            while (!closed)
+            {
+                Packet packet;
+                try
+                {
+                    packet = (Packet) applyQueue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    continue;
+                }
+                try
+                {
+                    DNSIncoming msg = packet.await();
+                    if (packet.isDropped())
+                    {
+                        continue;
+                    }
+                    if (msg != null && jmDNSImpl.getState() != DNSState.CANCELED)
+                    {
+                        jmDNSImpl.handleMessage(msg, packet.addr, packet.port, packet.host);
+                    }
+                    handled.incrementAndGet();
+                }
+                catch (InterruptedException e)
+                {
+                    // Closed while waiting for the parser, which still owns
+                    // the buffer until it is done.
+                    packet.drop();
+                }
+                catch (IOException e)
+                {
+                    logger.log(Level.WARNING, "run() exception ", e);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.log(Level.WARNING, "run() exception ", e);
+                }
+                finally
+                {
+                    packet.done();
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits a received packet. The packet is read from the remaining bytes
+     * of the buffer. The buffer is given back to the pool once the packet has
+     * been handled or dropped.
+     *
+     * @return false if the packet was dropped
+     */
+    boolean submit(ByteBuffer buffer, ByteBufferPool pool, InetAddress addr, int port)
+    {
+        Packet packet = new Packet(buffer, pool, addr, port);
+        received.incrementAndGet();
+        if (closed)
+        {
+            dropped.incrementAndGet();
+            pool.release(buffer);
+            return false;
+        }
+        // Queue the packet for the applier first, so that the order of the
+        // packets does not depend on the parsers.
+        if (!applyQueue.offer(packet))
+        {
+            switch (policy)
+            {
+                case OVERFLOW_BLOCK:
+                    try
+                    {
+                        applyQueue.put(packet);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        dropped.incrementAndGet();
+                        pool.release(buffer);
+                        return false;
+                    }
+                    break;
+                case OVERFLOW_DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    pool.release(buffer);
+                    return false;
+                default:
+                    while (!applyQueue.offer(packet))
+                    {
+                        Packet oldest = (Packet) applyQueue.poll();
+                        if (oldest != null)
+                        {
+                            evict(oldest);
+                        }
+                    }
+                    break;
+            }
+        }
+        int applyQueueSize = applyQueue.size();
+        if (applyQueueSize > maxApplyQueueSize)
+        {
+            maxApplyQueueSize = applyQueueSize;
+        }
+        try
+        {
+            parsers.execute(packet);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // closed concurrently
+            packet.unparsed();
+        }
+        int parseQueueSize = parsers.getQueue().size();
+        if (parseQueueSize > maxParseQueueSize)
+        {
+            maxParseQueueSize = parseQueueSize;
+        }
+        return true;
+    }
+
+    /**
+     * Drops a packet which has been taken out of the apply queue. It is taken
+     * out of the parse queue as well, unless a parser has it already.
+     */
+    private void evict(Packet packet)
+    {
+        packet.drop();
+        if (parsers.remove(packet))
+        {
+            packet.unparsed();
+        }
+        packet.done();
+    }
+
+    /**
+     * Stops the pipeline. Packets which have not been handled yet are
+     * dropped.
+     */
+    void close()
+    {
+        closed = true;
+        applier.interrupt();
+        parsers.shutdown();
+        Packet packet;
+        while ((packet = (Packet) applyQueue.poll()) != null)
+        {
+            evict(packet);
+        }
+    }
+
+    /**
+     * Returns the number of packets waiting for a parser.
+     */
+    public int getParseQueueSize()
+    {
+        return parsers.getQueue().size();
+    }
+
+    /**
+     * Returns the number of packets waiting to be handled, including the
+     * packets which are still being parsed.
+     */
+    public int getApplyQueueSize()
+    {
+        return applyQueue.size();
+    }
+
+    /**
+     * Returns the highest number of packets which waited for a parser.
+     */
+    public int getMaxParseQueueSize()
+    {
+        return maxParseQueueSize;
+    }
+
+    /**
+     * Returns the highest number of packets which waited to be handled.
+     */
+    public int getMaxApplyQueueSize()
+    {
+        return maxApplyQueueSize;
+    }
+
+    /**
+     * Returns the number of packets submitted to the pipeline.
+     */
+    public long getReceivedCount()
+    {
+        return received.get();
+    }
+
+    /**
+     * Returns the number of packets which have been handled.
+     */
+    public long getHandledCount()
+    {
+        return handled.get();
+    }
+
+    /**
+     * Returns the number of packets dropped because the pipeline was full or
+     * closed. Every packet which is received is eventually either handled or
+     * dropped.
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    public String toString()
+    {
+        return "PacketPipeline[received=" + getReceivedCount() + ",handled=" + getHandledCount() + ",dropped=" + getDroppedCount() + ",parseQueue=" + getParseQueueSize() + "/" + getMaxParseQueueSize() + ",applyQueue=" + getApplyQueueSize() + "/" + getMaxApplyQueueSize() + "]";
+    }
+}
@@ -0,0 +1,150 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Assembles the response to a query into as few messages as possible.
+ * <p/>
+ * Each record is written into the first message it fits in, answers first,
+ * then additional answers. The size of a record is measured by writing it,
+ * so it takes the name compression of the message it is written into into
+ * account. A record which does not fit leaves the message unchanged. When an
+ * answer fits in none of the messages, a new message is started. Additional
+ * answers are only added where there is room left, as they are optional.
+ * <p/>
+ * Records are placed in the order in which they were added, which keeps
+ * the records of a service together, and their names compressed.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public final class ResponseAssembler
+{
+    private static Logger logger = Logger.getLogger(ResponseAssembler.class.getName());
+
+    private final DNSIncoming in;
+    private final boolean multicast;
+    private final List questions = new ArrayList();
+    private final List answers = new ArrayList();
+    private final List additionals = new ArrayList();
+
+    /**
+     * @param in
+     *      The query, whose known answers are left out of the response, or
+     *      null for an announcement.
+     * @param multicast
+     *      False for a unicast response, which repeats the questions and the
+     *      id of the query.
+     */
+    public ResponseAssembler(DNSIncoming in, boolean multicast)
+    {
+        this.in = in;
+        this.multicast = multicast;
+    }
+
+    /**
+     * Adds a question, which is repeated in each message.
+     */
+    public void addQuestion(DNSQuestion question)
+    {
+        questions.add(question);
+    }
+
+    /**
+     * Adds an answer, unless it is a known answer of the query.
+     */
+    public void addAnswer(DNSRecord rec)
+    {
+        if (in == null || !rec.suppressedBy(in))
+        {
+            answers.add(rec);
+        }
+    }
+
+    /**
+     * Adds an additional answer, unless it is a known answer of the query.
+     */
+    public void addAdditionalAnswer(DNSRecord rec)
+    {
+        if (in == null || !rec.suppressedBy(in))
+        {
+            additionals.add(rec);
+        }
+    }
+
+    /**
+     * True if there are no answers to send.
+     */
+    public boolean isEmpty()
+    {
+        return answers.isEmpty();
+    }
+
+    /**
+     * Returns the messages of the response, in the order in which they should
+     * be sent. The messages should be released once they have been sent.
+     */
+    public List assemble() throws IOException
+    {
+        final List messages = new ArrayList(1);
+        for (int i = 0, n = answers.size(); i < n; i++)
+        {
+            final DNSRecord rec = (DNSRecord) answers.get(i);
+            if (!offerAnswer(messages, rec))
+            {
+                final DNSOutgoing out = createMessage();
+                messages.add(out);
+                if (!out.offerAnswer(rec, 0))
+                {
+                    logger.warning("assemble() answer too large for a message: " + rec);
+                    messages.remove(messages.size() - 1);
+                    out.release();
+                }
+            }
+        }
+        for (int i = 0, n = additionals.size(); i < n; i++)
+        {
+            final DNSRecord rec = (DNSRecord) additionals.get(i);
+            for (int j = 0, m = messages.size(); j < m; j++)
+            {
+                if (((DNSOutgoing) messages.get(j)).offerAdditionalAnswer(rec))
+                {
+                    break;
+                }
+            }
+        }
+        return messages;
+    }
+
+    private boolean offerAnswer(List messages, DNSRecord rec)
+    {
+        for (int j = 0, m = messages.size(); j < m; j++)
+        {
+            if (((DNSOutgoing) messages.get(j)).offerAnswer(rec, 0))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DNSOutgoing createMessage() throws IOException
+    {
+        final DNSOutgoing out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA, multicast);
+        if (!multicast)
+        {
+            out.id = in.id;
+        }
+        for (int i = 0, n = questions.size(); i < n; i++)
+        {
+            out.addQuestion((DNSQuestion) questions.get(i));
+        }
+        return out;
+    }
+}
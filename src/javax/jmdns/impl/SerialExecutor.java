@@ -0,0 +1,88 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks one at a time, in the order in which they were submitted, on
+ * the threads of another executor. The ListenerDispatcher has one for each
+ * listener, so that the listeners share the threads of the listener
+ * executor, while each listener still receives its events in order.
+ * <p/>
+ * If the other executor rejects a task, because it has been shut down, the
+ * tasks waiting to be run are dropped.
+ */
+final class SerialExecutor implements Executor
+{
+    private static Logger logger = Logger.getLogger(SerialExecutor.class.getName());
+
+    private final Executor executor;
+    private final LinkedList tasks = new LinkedList();
+    private Runnable active;
+
+    SerialExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    public synchronized void execute(final Runnable task)
+    {
+        tasks.add(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    scheduleNext();
+                }
+            }
+        });
+        if (active == null)
+        {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext()
+    {
+        active = (Runnable) (tasks.isEmpty() ? null : tasks.removeFirst());
+        if (active != null)
+        {
+            try
+            {
+                executor.execute(active);
+            }
+            catch (RejectedExecutionException e)
+            {
+                logger.warning("scheduleNext() executor rejected the task, dropping " + (tasks.size() + 1) + " tasks");
+                tasks.clear();
+                active = null;
+            }
+        }
+    }
+
+    /**
+     * Returns true if no task is running or waiting to be run.
+     */
+    synchronized boolean isIdle()
+    {
+        return active == null;
+    }
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     */
+    synchronized int getQueueSize()
+    {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,225 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.jmdns.ServiceBrowser;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
+
+/**
+ * A service browser, which follows the events of a service listener.
+ * <p/>
+ * The view keeps the last change of each service it has seen, in the order
+ * of their versions, so the changes since a version are the tail of it. The
+ * array of the resolved services is built again only after a change. The
+ * change of a removed service is forgotten after REMOVAL_LIFETIME.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public class ServiceBrowserImpl extends ServiceBrowser implements ServiceListener
+{
+    private static Logger logger = Logger.getLogger(ServiceBrowserImpl.class.getName());
+
+    private static final ServiceInfo[] NO_SERVICES = new ServiceInfo[0];
+
+    /**
+     * Milliseconds for which a browser remembers that a service has been
+     * removed.
+     */
+    public static long REMOVAL_LIFETIME = 10 * 60 * 1000;
+
+    private final JmDNSImpl jmDNSImpl;
+    private final String type;
+
+    /**
+     * The last change of each service. Keys are lower case instance names,
+     * values are instances of ServiceBrowser.Change, ordered by version.
+     */
+    private final Map changes = new LinkedHashMap();
+    private long version;
+
+    /**
+     * When the services in changes were removed. Keys are lower case
+     * instance names, values are Longs, in the order of the removals.
+     */
+    private final Map removals = new LinkedHashMap();
+
+    /**
+     * The resolved services, or null if the view has changed since they were
+     * listed.
+     */
+    private ServiceInfo[] services = NO_SERVICES;
+
+    /**
+     * When the view last changed, or a service was added which is still being
+     * resolved.
+     */
+    private long lastChange = System.currentTimeMillis();
+
+    public ServiceBrowserImpl(JmDNSImpl jmDNSImpl, String type)
+    {
+        this.jmDNSImpl = jmDNSImpl;
+        this.type = type;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public synchronized long getVersion()
+    {
+        return version;
+    }
+
+    public synchronized ServiceInfo[] getServices()
+    {
+        if (services == null)
+        {
+            final List list = new ArrayList(changes.size());
+            for (final Iterator i = changes.values().iterator(); i.hasNext();)
+            {
+                final Change change = (Change) i.next();
+                if (!change.isRemoved())
+                {
+                    list.add(change.getInfo());
+                }
+            }
+            services = (ServiceInfo[]) list.toArray(new ServiceInfo[list.size()]);
+        }
+        return services;
+    }
+
+    public synchronized Iterator getChanges(long since)
+    {
+        final List list = new ArrayList();
+        for (final Iterator i = changes.values().iterator(); i.hasNext();)
+        {
+            final Change change = (Change) i.next();
+            if (change.getVersion() > since)
+            {
+                list.add(change);
+            }
+        }
+        return list.iterator();
+    }
+
+    public synchronized ServiceInfo[] waitForServices(long quiet, long timeout) throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + timeout;
+        long delay;
+        while ((delay = Math.min(lastChange + quiet, end) - System.currentTimeMillis()) > 0)
+        {
+            wait(delay);
+        }
+        return getServices();
+    }
+
+    public void close()
+    {
+        jmDNSImpl.removeServiceListener(type, this);
+    }
+
+    /**
+     * A service has been added. It is resolved, and the view waits for it.
+     */
+    public void serviceAdded(ServiceEvent event)
+    {
+        synchronized (this)
+        {
+            lastChange = System.currentTimeMillis();
+            notifyAll();
+        }
+        jmDNSImpl.getServiceInfoAsync(event.getType(), event.getName());
+    }
+
+    /**
+     * A service has been removed.
+     */
+    public void serviceRemoved(ServiceEvent event)
+    {
+        synchronized (this)
+        {
+            final Change change = (Change) changes.get(DNSNameTable.getKey(event.getName()));
+            if (change != null && !change.isRemoved())
+            {
+                update(event.getName(), null);
+            }
+        }
+    }
+
+    /**
+     * A service has been resolved, or its text has changed.
+     */
+    public void serviceResolved(ServiceEvent event)
+    {
+        if (event.getInfo() != null)
+        {
+            synchronized (this)
+            {
+                update(event.getName(), event.getInfo());
+            }
+        }
+    }
+
+    private void update(String name, ServiceInfo info)
+    {
+        final String key = DNSNameTable.getKey(name);
+        final long now = System.currentTimeMillis();
+        version++;
+        changes.remove(key);
+        changes.put(key, new Change(version, name, info));
+        removals.remove(key);
+        if (info == null)
+        {
+            removals.put(key, Long.valueOf(now));
+        }
+        prune(now);
+        services = null;
+        lastChange = now;
+        notifyAll();
+        logger.finer("update() " + type + " version " + version + " " + name);
+    }
+
+    /**
+     * Forgets the services which were removed more than REMOVAL_LIFETIME ago.
+     */
+    private void prune(long now)
+    {
+        for (final Iterator i = removals.entrySet().iterator(); i.hasNext();)
+        {
+            final Map.Entry entry = (Map.Entry) i.next();
+            if (now - ((Long) entry.getValue()).longValue() < REMOVAL_LIFETIME)
+            {
+                break;
+            }
+            changes.remove(entry.getKey());
+            i.remove();
+        }
+    }
+
+    public synchronized String toString()
+    {
+        final StringBuffer aLog = new StringBuffer();
+        aLog.append("version " + version);
+        for (final Iterator i = changes.values().iterator(); i.hasNext();)
+        {
+            final Change change = (Change) i.next();
+            if (!change.isRemoved())
+            {
+                aLog.append("\n\t\tService: " + change.getName() + ": " + change.getInfo());
+            }
+        }
+        return aLog.toString();
+    }
+}
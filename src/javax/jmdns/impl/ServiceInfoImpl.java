@@ -8,13 +8,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.TimerTask;
+import java.util.List;
 import java.util.Vector;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.jmdns.ServiceInfo;
@@ -22,6 +25,7 @@ import javax.jmdns.ServiceNameListener;
 import javax.jmdns.impl.DNSRecord.Pointer;
 import javax.jmdns.impl.DNSRecord.Service;
 import javax.jmdns.impl.DNSRecord.Text;
+import javax.jmdns.impl.tasks.DNSTask;
 
 /**
  * JmDNS service information.
@@ -49,7 +53,13 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
      * Possible tasks are JmDNS.Prober, JmDNS.Announcer, JmDNS.Responder,
      * JmDNS.Canceler.
      */
-    private TimerTask task;
+    private DNSTask task;
+
+    /**
+     * The batch registration this service info belongs to, until it has been
+     * announced.
+     */
+    private ServiceRegistration registration;
 
     String type;
     private String name;
@@ -62,6 +72,19 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     InetAddress addr;
     private boolean handled = false;
 
+    /**
+     * The records announcing this service with the default TTL, or null.
+     * They are created once and then shared by all the responses, until the
+     * service changes.
+     */
+    private volatile Answers answers;
+
+    /**
+     * Incremented each time the service changes, to tell whether answers is
+     * still up to date.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
 
     /**
      * Service name change listeners.
@@ -177,6 +200,7 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     {
         String oldName = this.name;
         this.name = name;
+        invalidateAnswers();
 
         if (!oldName.equals(name))
             notifyServiceNameChanged(name, oldName);
@@ -492,11 +516,20 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
                     if (rec.name.equals(getQualifiedName()))
                     {
                         DNSRecord.Service srv = (DNSRecord.Service) rec;
+                        if (server != null && !server.equalsIgnoreCase(srv.server))
+                        {
+                            // the address records of the old server are of
+                            // no interest any more
+                            jmdns.removeListenerQuestion(this, new DNSQuestion(server, DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+                        }
                         server = srv.server;
                         port = srv.port;
                         weight = srv.weight;
                         priority = srv.priority;
                         addr = null;
+                        invalidateAnswers();
+                        // we are now interested in the address records of the server
+                        jmdns.addListenerQuestion(this, new DNSQuestion(server, DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
                         // changed to use getCache() instead - jeffs
                         // updateRecord(jmdns, now, (DNSRecord)jmdns.cache.get(server, TYPE_A, CLASS_IN));
                         updateRecord(jmdns, now, (DNSRecord) jmdns.getCache().get(server, DNSConstants.TYPE_A, DNSConstants.CLASS_IN));
@@ -535,6 +568,21 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
         }
     }
 
+    /**
+     * Fills the service info with the records of the cache: the SRV and TXT
+     * records of the service, and an address record of its server.
+     */
+    void updateFromCache(JmDNSImpl jmdns, long now)
+    {
+        final DNSCache cache = jmdns.getCache();
+        updateRecord(jmdns, now, (DNSRecord) cache.get(getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN));
+        updateRecord(jmdns, now, (DNSRecord) cache.get(getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN));
+        if (server != null && addr == null)
+        {
+            updateRecord(jmdns, now, (DNSRecord) cache.get(server, DNSConstants.TYPE_AAAA, DNSConstants.CLASS_IN));
+        }
+    }
+
     /**
      * Returns true if the service info is filled with data.
      */
@@ -548,10 +596,24 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     /**
      * Sets the state and notifies all objects that wait on the ServiceInfo.
      */
-    public synchronized void advanceState()
+    public void advanceState()
     {
-        state = state.advance();
-        notifyAll();
+        ServiceRegistration announced = null;
+        synchronized (this)
+        {
+            state = state.advance();
+            invalidateAnswers();
+            notifyAll();
+            if (state == DNSState.ANNOUNCED)
+            {
+                announced = registration;
+                registration = null;
+            }
+        }
+        if (announced != null)
+        {
+            announced.announced(this);
+        }
     }
 
     /**
@@ -560,6 +622,7 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     synchronized void revertState()
     {
         state = state.revert();
+        invalidateAnswers();
         notifyAll();
     }
 
@@ -569,15 +632,53 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     synchronized void setStateAnnounce()
     {
         state = DNSState.ANNOUNCING_1;
+        invalidateAnswers();
     }
 
     /**
      * Sets the state and notifies all objects that wait on the ServiceInfo.
      */
-    synchronized void cancel()
+    void cancel()
     {
-        state = DNSState.CANCELED;
-        notifyAll();
+        final ServiceRegistration canceled;
+        synchronized (this)
+        {
+            state = DNSState.CANCELED;
+            invalidateAnswers();
+            notifyAll();
+            canceled = registration;
+            registration = null;
+        }
+        if (canceled != null)
+        {
+            canceled.canceled(this);
+        }
+    }
+
+    /**
+     * Starts announcing this service again, for a registration which is told
+     * when it has been announced.
+     *
+     * @return false if a registration of this service is still pending
+     */
+    synchronized boolean reannounce(ServiceRegistration registration)
+    {
+        if (this.registration != null)
+        {
+            return false;
+        }
+        this.registration = registration;
+        setStateAnnounce();
+        return true;
+    }
+
+    /**
+     * Makes this service info part of a batch registration, which is told
+     * when it has been announced.
+     */
+    synchronized void setRegistration(ServiceRegistration registration)
+    {
+        this.registration = registration;
     }
 
     /**
@@ -638,28 +739,105 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
         return buf.toString();
     }
 
+    /**
+     * The records of a service for a given server, at a given version of the
+     * service.
+     */
+    private final static class Answers
+    {
+        final int version;
+        final String server;
+        final List records;
+        final DNSRecord text;
+
+        Answers(int version, String server, DNSRecord[] records)
+        {
+            this.version = version;
+            this.server = server;
+            this.records = Collections.unmodifiableList(Arrays.asList(records));
+            this.text = records[2];
+        }
+    }
+
+    private DNSRecord[] createAnswers(int ttl, String server)
+    {
+        final String qualifiedName = getQualifiedName();
+        return new DNSRecord[]{
+            new Pointer(type, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, ttl, qualifiedName),
+            new Service(qualifiedName, DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE, ttl, priority, weight, port, server),
+            new Text(qualifiedName, DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE, ttl, getText())};
+    }
+
+    private Answers getAnswers(String server)
+    {
+        Answers current = answers;
+        if (current == null || current.version != version.get() || !current.server.equals(server))
+        {
+            // Read the version first: if the service changes while the
+            // records are created, they are created again next time.
+            current = new Answers(version.get(), server, createAnswers(DNSConstants.DNS_TTL, server));
+            answers = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the PTR, SRV and TXT records of this service with the default
+     * TTL, as an unmodifiable list. The records are shared, and must not be
+     * modified or added to a cache.
+     */
+    public List getAnswers(HostInfo localHost)
+    {
+        return getAnswers(localHost.getName()).records;
+    }
+
+    /**
+     * Forgets the records of this service, after it has changed.
+     */
+    private void invalidateAnswers()
+    {
+        version.incrementAndGet();
+        answers = null;
+    }
+
+    /**
+     * Returns the PTR, SRV and TXT records of this service with a TTL, such
+     * as 0 for goodbyes. The records must not be modified.
+     */
+    public List getAnswers(HostInfo localHost, int ttl)
+    {
+        return (ttl == DNSConstants.DNS_TTL) ? getAnswers(localHost) : Arrays.asList(createAnswers(ttl, localHost.getName()));
+    }
+
 	public void addAnswers(DNSOutgoing out, int ttl, HostInfo localHost) throws IOException
     {
-        out.addAnswer(new Pointer(type, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, ttl,
-                getQualifiedName()), 0);
-        out.addAnswer(new Service(getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE,
-                ttl, priority, weight, port, localHost.getName()), 0);
-        out.addAnswer(new Text(getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE,
-                ttl, getText()), 0);
+        final List records = getAnswers(localHost, ttl);
+        for (int i = 0, n = records.size(); i < n; i++)
+        {
+            out.addAnswer((DNSRecord) records.get(i), 0);
+        }
     }
 
     public void addTextAnswer(DNSOutgoing out, int ttl) throws IOException
     {
-        out.addAnswer(new Text(getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE,
-                ttl, getText()), 0);
+        final Answers current = answers;
+        if (ttl == DNSConstants.DNS_TTL && current != null && current.version == version.get())
+        {
+            out.addAnswer(current.text, 0);
+        }
+        else
+        {
+            out.addAnswer(new Text(getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN|DNSConstants.CLASS_UNIQUE,
+                    ttl, getText()), 0);
+        }
     }
 
-    public void setTask(TimerTask task)
+    public void setTask(DNSTask task)
     {
         this.task = task;
     }
 
-    public TimerTask getTask()
+    public DNSTask getTask()
     {
         return task;
     }
@@ -667,6 +845,7 @@ public class ServiceInfoImpl extends ServiceInfo implements DNSListener
     public void setText(byte [] text)
     {
         this.text = text;
+        invalidateAnswers();
     }
 
     public void setText(Hashtable props)
@@ -0,0 +1,97 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The registration of a batch of services, which are probed and announced
+ * together.
+ * <p/>
+ * The registration remembers the name each service was registered with.
+ * Once every service has been announced or canceled, its future completes
+ * with a map from these names to the service infos, or to null for the
+ * services which were canceled. A service which had to be renamed, because of
+ * a conflict, is announced with its new name. The future is not completed
+ * by the task which announced the last service, which holds its locks.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class ServiceRegistration
+{
+    private final JmDNSImpl jmDNSImpl;
+    private final CompletableFuture future = new CompletableFuture();
+
+    /**
+     * The results, by requested qualified name, in the order of the batch.
+     */
+    private final Map results = new LinkedHashMap();
+
+    /**
+     * The requested qualified names of the services which are still being
+     * registered.
+     */
+    private final Map pending = new IdentityHashMap();
+
+    /**
+     * @param infos the services, with the names they are registered with
+     */
+    ServiceRegistration(JmDNSImpl jmDNSImpl, List infos)
+    {
+        this.jmDNSImpl = jmDNSImpl;
+        for (final Iterator i = infos.iterator(); i.hasNext();)
+        {
+            final ServiceInfoImpl info = (ServiceInfoImpl) i.next();
+            results.put(info.getQualifiedName(), null);
+            pending.put(info, info.getQualifiedName());
+        }
+    }
+
+    CompletableFuture getFuture()
+    {
+        return future;
+    }
+
+    /**
+     * A service has been announced.
+     */
+    void announced(ServiceInfoImpl info)
+    {
+        finish(info, info);
+    }
+
+    /**
+     * A service has been canceled before it was announced.
+     */
+    void canceled(ServiceInfoImpl info)
+    {
+        finish(info, null);
+    }
+
+    private void finish(ServiceInfoImpl info, ServiceInfoImpl result)
+    {
+        synchronized (this)
+        {
+            final String name = (String) pending.remove(info);
+            if (name == null)
+            {
+                return;
+            }
+            results.put(name, result);
+            if (!pending.isEmpty())
+            {
+                return;
+            }
+        }
+        // The tasks announcing the services hold the locks of the infos.
+        jmDNSImpl.completeLater(future, Collections.unmodifiableMap(results));
+    }
+}
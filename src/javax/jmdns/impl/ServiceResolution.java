@@ -0,0 +1,186 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import javax.jmdns.impl.tasks.DNSTask;
+import javax.jmdns.impl.tasks.ServiceInfoResolver;
+import javax.jmdns.impl.tasks.TaskScheduler;
+
+/**
+ * The asynchronous requests for one service info, which share one
+ * ServiceInfoResolver.
+ * <p/>
+ * Each request has its own future, which completes with the info once it is
+ * resolved, or with null when the timeout of the request expires. A request
+ * which is cancelled is forgotten. When no request is left, the resolver is
+ * canceled and the info no longer listens for records.
+ * <p/>
+ * The futures are completed directly, so that getServiceInfo() can wait for
+ * them on any thread, including the listener executor. The futures handed to
+ * the asynchronous API are completed by the listener executor instead.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class ServiceResolution
+{
+    private final JmDNSImpl jmDNSImpl;
+    private final ServiceInfoImpl info;
+    private final String key;
+    private final ServiceInfoResolver resolver;
+
+    /**
+     * The futures of the pending requests.
+     */
+    private final List futures = new ArrayList();
+    private boolean finished;
+
+    /**
+     * True if the resolution finished with the info.
+     */
+    private boolean resolved;
+
+    ServiceResolution(JmDNSImpl jmDNSImpl, ServiceInfoImpl info, String key)
+    {
+        this.jmDNSImpl = jmDNSImpl;
+        this.info = info;
+        this.key = key;
+        this.resolver = new ServiceInfoResolver(jmDNSImpl, info);
+    }
+
+    ServiceInfoImpl getInfo()
+    {
+        return info;
+    }
+
+    /**
+     * Starts sending queries.
+     */
+    void start(TaskScheduler scheduler)
+    {
+        resolver.start(scheduler);
+        // A record may have completed the info before we were registered.
+        if (info.hasData())
+        {
+            resolved();
+        }
+    }
+
+    /**
+     * Adds a request, which is given up after a timeout. If the resolution has
+     * completed already, the request is completed with the info.
+     *
+     * @return null if the request cannot join, because the resolution has
+     *  ended without the info, or because the resolver has given up
+     */
+    CompletableFuture add(long timeout)
+    {
+        final CompletableFuture future = new CompletableFuture();
+        synchronized (this)
+        {
+            if (resolved)
+            {
+                return CompletableFuture.completedFuture(info);
+            }
+            if (finished || resolver.isCanceled())
+            {
+                return null;
+            }
+            futures.add(future);
+        }
+        final DNSTask timer = new DNSTask()
+        {
+            public void run()
+            {
+                future.complete(null);
+            }
+        };
+        future.whenComplete(new BiConsumer()
+        {
+            public void accept(Object result, Object failure)
+            {
+                timer.cancel();
+                remove(future);
+            }
+        });
+        jmDNSImpl.getScheduler().schedule(timer, timeout);
+        if (timer.isCanceled() && !future.isDone())
+        {
+            // the scheduler has been shut down
+            future.complete(null);
+        }
+        return future;
+    }
+
+    /**
+     * Completes the pending requests with the info.
+     */
+    void resolved()
+    {
+        finish(true);
+    }
+
+    /**
+     * Completes the pending requests with null.
+     */
+    void cancel()
+    {
+        finish(false);
+    }
+
+    /**
+     * Forgets a completed or cancelled request. Once the last one is gone,
+     * the resolution stops.
+     */
+    private void remove(CompletableFuture future)
+    {
+        synchronized (this)
+        {
+            futures.remove(future);
+            if (!futures.isEmpty() || finished)
+            {
+                return;
+            }
+            finished = true;
+        }
+        stop();
+    }
+
+    /**
+     * Marks the resolution as finished, stops it, and completes the pending
+     * requests. Requests added afterwards see the outcome.
+     */
+    private void finish(boolean success)
+    {
+        final Object[] pending;
+        synchronized (this)
+        {
+            if (finished)
+            {
+                return;
+            }
+            finished = true;
+            resolved = success;
+            pending = futures.toArray();
+        }
+        stop();
+        final ServiceInfoImpl result = success ? info : null;
+        for (int i = 0; i < pending.length; i++)
+        {
+            ((CompletableFuture) pending[i]).complete(result);
+        }
+    }
+
+    private void stop()
+    {
+        resolver.cancel();
+        jmDNSImpl.removeListener(info);
+        jmDNSImpl.removeResolution(key, this);
+    }
+}
@@ -0,0 +1,183 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The services registered with a JmDNS instance. Keys are lower case
+ * qualified names, values are ServiceInfoImpl's.
+ * <p/>
+ * The table also indexes the services by their type, so that the services of
+ * a type are found without looking at all the others. The index follows
+ * every change to the table, including the renaming of a service after a
+ * conflict. The services of a type are kept in an immutable array, which is
+ * replaced when a service is added or removed, so that reading them neither
+ * locks nor copies anything.
+ * <p/>
+ * The table is only changed through its own methods. The map returned by
+ * <code>asMap()</code> and the collections of the table can not be
+ * modified, so that no change escapes the index.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+final class ServiceTable
+{
+    private final static ServiceInfoImpl[] EMPTY = new ServiceInfoImpl[0];
+
+    /**
+     * Keys are lower case qualified names, values are ServiceInfoImpl's.
+     */
+    private final Map services;
+
+    /**
+     * Read only view of the services.
+     */
+    private final Map view;
+
+    /**
+     * Keys are lower case types, values are arrays of ServiceInfoImpl's.
+     */
+    private final Map byType = new ConcurrentHashMap();
+
+    ServiceTable(int initialCapacity)
+    {
+        services = new Hashtable(initialCapacity);
+        view = Collections.unmodifiableMap(services);
+    }
+
+    synchronized Object put(Object key, Object value)
+    {
+        final Object old = services.put(key, value);
+        if (old != value)
+        {
+            if (old != null)
+            {
+                unindex((ServiceInfoImpl) old);
+            }
+            index((ServiceInfoImpl) value);
+        }
+        return old;
+    }
+
+    synchronized Object remove(Object key)
+    {
+        final Object old = services.remove(key);
+        if (old != null)
+        {
+            unindex((ServiceInfoImpl) old);
+        }
+        return old;
+    }
+
+    /**
+     * Files a service under its new name, after it has been renamed because
+     * of a conflict.
+     *
+     * @param oldKey the lower case qualified name it was registered with
+     */
+    synchronized void rename(String oldKey, ServiceInfoImpl info)
+    {
+        if (services.get(oldKey) == info)
+        {
+            services.remove(oldKey);
+        }
+        put(DNSNameTable.getKey(info.getQualifiedName()), info);
+    }
+
+    synchronized void clear()
+    {
+        services.clear();
+        byType.clear();
+    }
+
+    Object get(Object key)
+    {
+        return services.get(key);
+    }
+
+    boolean containsKey(Object key)
+    {
+        return services.containsKey(key);
+    }
+
+    int size()
+    {
+        return services.size();
+    }
+
+    Set keySet()
+    {
+        return view.keySet();
+    }
+
+    Collection values()
+    {
+        return view.values();
+    }
+
+    /**
+     * Returns a read only view of the table.
+     */
+    Map asMap()
+    {
+        return view;
+    }
+
+    /**
+     * Returns the services of a type. The array must not be modified.
+     */
+    ServiceInfoImpl[] getServices(String type)
+    {
+        final ServiceInfoImpl[] infos = (ServiceInfoImpl[]) byType.get(DNSNameTable.getKey(type));
+        return (infos != null) ? infos : EMPTY;
+    }
+
+    private void index(ServiceInfoImpl info)
+    {
+        final String key = DNSNameTable.getKey(info.getType());
+        final ServiceInfoImpl[] current = getServices(key);
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] == info)
+            {
+                return;
+            }
+        }
+        final ServiceInfoImpl[] updated = new ServiceInfoImpl[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = info;
+        byType.put(key, updated);
+    }
+
+    private void unindex(ServiceInfoImpl info)
+    {
+        final String key = DNSNameTable.getKey(info.getType());
+        final ServiceInfoImpl[] current = getServices(key);
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] == info)
+            {
+                if (current.length == 1)
+                {
+                    byType.remove(key);
+                }
+                else
+                {
+                    final ServiceInfoImpl[] updated = new ServiceInfoImpl[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    byType.put(key, updated);
+                }
+                return;
+            }
+        }
+    }
+}
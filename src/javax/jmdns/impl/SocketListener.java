@@ -6,11 +6,14 @@ package javax.jmdns.impl;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Listen for multicast packets.
+ * Listen for multicast packets, and submit them to the packet pipeline of
+ * JmDNS.
  */
 class SocketListener implements Runnable
 {
@@ -21,67 +24,63 @@ class SocketListener implements Runnable
      */
     private final JmDNSImpl jmDNSImpl;
 
+    /**
+     * The socket of this listener. When JmDNS recovers, the socket is closed
+     * and a new listener is started for the new socket, so the errors of
+     * this one are ignored.
+     */
+    private final MulticastSocket socket;
+
     /**
      * @param jmDNSImpl
+     * @param socket
      */
-    SocketListener(JmDNSImpl jmDNSImpl)
+    SocketListener(JmDNSImpl jmDNSImpl, MulticastSocket socket)
     {
         this.jmDNSImpl = jmDNSImpl;
+        this.socket = socket;
     }
 
+    /**
+     * Buffers of the received packets. They are given back to the pool once
+     * the packets have gone through the pipeline.
+     */
+    private final ByteBufferPool buffers = new ByteBufferPool(DNSConstants.MAX_MSG_ABSOLUTE, 32, false);
+
     public void run()
     {
         try
         {
-            byte buf[] = new byte[DNSConstants.MAX_MSG_ABSOLUTE];
-            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            DatagramPacket packet = new DatagramPacket(new byte[0], 0);
             while (this.jmDNSImpl.getState() != DNSState.CANCELED)
             {
-                packet.setLength(buf.length);
-                this.jmDNSImpl.getSocket().receive(packet);
-                if (this.jmDNSImpl.getState() == DNSState.CANCELED)
-                {
-                    break;
-                }
+                ByteBuffer buffer = buffers.take();
+                packet.setData(buffer.array(), buffer.arrayOffset(), buffer.capacity());
                 try
                 {
-                    if (this.jmDNSImpl.getLocalHost().shouldIgnorePacket(packet))
-                    {
-                        continue;
-                    }
-
-                    DNSIncoming msg = new DNSIncoming(packet);
-                    logger.finest("SocketListener.run() JmDNS in:" + msg.print(true));
-
-                    synchronized (this.jmDNSImpl.getIoLock())
-                    {
-                        if (msg.isQuery())
-                        {
-                            if (packet.getPort() != DNSConstants.MDNS_PORT)
-                            {
-                                this.jmDNSImpl.handleQuery(msg, packet.getAddress(), packet.getPort());
-                            }
-                            this.jmDNSImpl.handleQuery(msg, this.jmDNSImpl.getGroup(), DNSConstants.MDNS_PORT);
-                        }
-                        else
-                        {
-                            this.jmDNSImpl.handleResponse(msg);
-                        }
-                    }
+                    socket.receive(packet);
                 }
                 catch (IOException e)
                 {
-                    logger.log(Level.WARNING, "run() exception ", e);
+                    buffers.release(buffer);
+                    throw e;
+                }
+                if (this.jmDNSImpl.getState() == DNSState.CANCELED)
+                {
+                    buffers.release(buffer);
+                    break;
                 }
+                buffer.limit(packet.getLength());
+                this.jmDNSImpl.getPipeline().submit(buffer, buffers, packet.getAddress(), packet.getPort());
             }
         }
         catch (IOException e)
         {
-            if (this.jmDNSImpl.getState() != DNSState.CANCELED)
+            if (this.jmDNSImpl.getState() != DNSState.CANCELED && socket == this.jmDNSImpl.getSocket())
             {
                 logger.log(Level.WARNING, "run() exception ", e);
                 this.jmDNSImpl.recover();
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -7,25 +7,27 @@ package javax.jmdns.impl.tasks;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jmdns.impl.DNSConstants;
 import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSRecord;
 import javax.jmdns.impl.DNSState;
+import javax.jmdns.impl.HostInfo;
 import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.ResponseAssembler;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The Announcer sends an accumulated query of all announces, and advances
- * the state of all serviceInfos, for which it has sent an announce.
+ * the state of all serviceInfos, for which it has sent an announce. The
+ * announces are packed into as few messages as possible.
  * The Announcer also sends announcements and advances the state of JmDNS itself.
  * <p/>
  * When the announcer has run two times, it finishes.
  */
-public class Announcer extends TimerTask
+public class Announcer extends DNSTask
 {
     static Logger logger = Logger.getLogger(Announcer.class.getName());
 
@@ -60,9 +62,9 @@ public class Announcer extends TimerTask
         }
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, DNSConstants.ANNOUNCE_WAIT_INTERVAL, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        scheduler.schedule(this, DNSConstants.ANNOUNCE_WAIT_INTERVAL, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
     }
 
     public boolean cancel()
@@ -89,19 +91,19 @@ public class Announcer extends TimerTask
         return super.cancel();
     }
 
+    public boolean isSerial()
+    {
+        return true;
+    }
+
     public void run()
     {
-        DNSOutgoing out = null;
         try
         {
-            // send probes for JmDNS itself
-            if (this.jmDNSImpl.getState() == taskState)
+            // send announces for JmDNS itself
+            final boolean announceHost = this.jmDNSImpl.getState() == taskState;
+            if (announceHost)
             {
-                if (out == null)
-                {
-                    out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-                }
-                this.jmDNSImpl.getLocalHost().addAddressRecords(out, false);
                 this.jmDNSImpl.advanceState();
             }
             // send announces for services
@@ -113,6 +115,7 @@ public class Announcer extends TimerTask
             {
                 list = new ArrayList(this.jmDNSImpl.getServices().values());
             }
+            final List answers = new ArrayList();
             for (Iterator i = list.iterator(); i.hasNext();)
             {
                 ServiceInfoImpl info = (ServiceInfoImpl) i.next();
@@ -122,20 +125,45 @@ public class Announcer extends TimerTask
                     {
                         info.advanceState();
                         logger.finer("run() JmDNS announcing " + info.getQualifiedName() + " state " + info.getState());
-                        if (out == null)
-                        {
-                            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-                        }
-                        info.addAnswers(out, DNSConstants.DNS_TTL, this.jmDNSImpl.getLocalHost());
+                        answers.addAll(info.getAnswers(this.jmDNSImpl.getLocalHost()));
                     }
                 }
             }
-            if (out != null)
+            // each interface is told its own addresses
+            boolean sent = false;
+            final HostInfo[] hosts = this.jmDNSImpl.getHosts();
+            for (int h = 0; h < hosts.length; h++)
             {
-                logger.finer("run() JmDNS announcing #" + taskState);
-                this.jmDNSImpl.send(out);
+                final ResponseAssembler assembler = new ResponseAssembler(null, true);
+                if (announceHost)
+                {
+                    if (hosts[h].getDNS4AddressRecord() != null)
+                    {
+                        assembler.addAnswer(hosts[h].getDNS4AddressRecord());
+                    }
+                    if (hosts[h].getDNS6AddressRecord() != null)
+                    {
+                        assembler.addAnswer(hosts[h].getDNS6AddressRecord());
+                    }
+                }
+                for (int j = 0, n = answers.size(); j < n; j++)
+                {
+                    assembler.addAnswer((DNSRecord) answers.get(j));
+                }
+                if (!assembler.isEmpty())
+                {
+                    logger.finer("run() JmDNS announcing #" + taskState);
+                    final List messages = assembler.assemble();
+                    for (int i = 0, n = messages.size(); i < n; i++)
+                    {
+                        final DNSOutgoing out = (DNSOutgoing) messages.get(i);
+                        this.jmDNSImpl.send(out, hosts[h]);
+                        out.release();
+                    }
+                    sent = true;
+                }
             }
-            else
+            if (!sent)
             {
                 // If we have nothing to send, another timer taskState ahead
                 // of us has done the job for us. We can cancel.
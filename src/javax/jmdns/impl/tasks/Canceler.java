@@ -4,25 +4,41 @@
 
 package javax.jmdns.impl.tasks;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jmdns.impl.DNSConstants;
 import javax.jmdns.impl.DNSOutgoing;
-import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.HostInfo;
 import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.ResponseAssembler;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The Canceler sends two announces with TTL=0 for the specified services.
+ * <p/>
+ * The goodbyes of all the services are sent together, each record once, in
+ * as many messages as needed. When the host itself is going away, the
+ * goodbyes include its address records.
  */
-public class Canceler extends TimerTask
+public class Canceler extends DNSTask
 {
     static Logger logger = Logger.getLogger(Canceler.class.getName());
 
+    /**
+     * The number of times the goodbyes are sent.
+     */
+    private final static int GOODBYES = 2;
+
     /**
      * 
      */
@@ -32,80 +48,119 @@ public class Canceler extends TimerTask
      */
     int count = 0;
     /**
-     * The services that need cancelling.
-     * Note: We have to use a local variable here, because the services
+     * The records to say goodbye for.
+     * Note: We have to collect them here, because the services
      * that are canceled, are removed immediately from variable JmDNS.services.
      */
-    private ServiceInfoImpl[] infos;
+    private final List records = new ArrayList();
+    /**
+     * The hosts of the interfaces the goodbyes are sent on, and for each of
+     * them, its address records to say goodbye for.
+     */
+    private final HostInfo[] hosts;
+    private final List[] addressRecords;
     /**
-     * We call notifyAll() on the lock object, when we have canceled the
-     * service infos.
+     * Milliseconds between the goodbyes.
+     */
+    private final long interval;
+    /**
+     * Completed when we have canceled the service infos, or when we are
+     * canceled ourselves.
      * This is used by method JmDNS.unregisterService() and
      * JmDNS.unregisterAllServices, to ensure that the JmDNS
      * socket stays open until the Canceler has canceled all services.
      * <p/>
-     * Note: We need this lock, because ServiceInfos do the transition from
+     * Note: We need this future, because ServiceInfos do the transition from
      * state ANNOUNCED to state CANCELED before we get here. We could get
-     * rid of this lock, if we added a state named CANCELLING to DNSState.
+     * rid of it, if we added a state named CANCELLING to DNSState.
      */
-    private Object lock;
+    private final CompletableFuture done = new CompletableFuture();
     int ttl = 0;
 
-    public Canceler(JmDNSImpl jmDNSImpl, ServiceInfoImpl info, Object lock)
+    public Canceler(JmDNSImpl jmDNSImpl, ServiceInfoImpl info)
     {
-        this.jmDNSImpl = jmDNSImpl;
-        this.infos = new ServiceInfoImpl[]{info};
-        this.lock = lock;
-        this.jmDNSImpl.addListener(info, new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+        this(jmDNSImpl, Arrays.asList(new ServiceInfoImpl[]{info}), false, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
     }
 
-    public Canceler(JmDNSImpl jmDNSImpl, ServiceInfoImpl[] infos, Object lock)
+    public Canceler(JmDNSImpl jmDNSImpl, Collection infos)
     {
-        this.jmDNSImpl = jmDNSImpl;
-        this.infos = infos;
-        this.lock = lock;
+        this(jmDNSImpl, infos, false, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
     }
 
-    public Canceler(JmDNSImpl jmDNSImpl, Collection infos, Object lock)
+    /**
+     * @param infos    the services
+     * @param host     true if the host is going away too
+     * @param interval milliseconds between the goodbyes
+     */
+    public Canceler(JmDNSImpl jmDNSImpl, Collection infos, boolean host, long interval)
     {
         this.jmDNSImpl = jmDNSImpl;
-        this.infos = (ServiceInfoImpl[]) infos.toArray(new ServiceInfoImpl[infos.size()]);
-        this.lock = lock;
+        this.interval = interval;
+        final HostInfo localHost = jmDNSImpl.getLocalHost();
+        // A service listed twice is said goodbye to once.
+        final Set services = new LinkedHashSet(infos);
+        for (Iterator i = services.iterator(); i.hasNext();)
+        {
+            records.addAll(((ServiceInfoImpl) i.next()).getAnswers(localHost, ttl));
+        }
+        hosts = jmDNSImpl.getHosts();
+        addressRecords = new List[hosts.length];
+        for (int h = 0; h < hosts.length; h++)
+        {
+            addressRecords[h] = host ? hosts[h].getAddressRecords(ttl) : new ArrayList();
+        }
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, 0, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        scheduler.schedule(this, 0, Math.max(1, interval));
+    }
+
+    /**
+     * Returns the future which is completed, with null, once the services
+     * have been canceled. It is also completed if this task is canceled, so
+     * waiting for it does not hang when JmDNS is closed.
+     */
+    public CompletableFuture getFuture()
+    {
+        return done;
+    }
+
+    public boolean cancel()
+    {
+        done.complete(null);
+        return super.cancel();
+    }
+
+    public boolean isSerial()
+    {
+        return true;
     }
 
     public void run()
     {
         try
         {
-            if (++count < 3)
+            logger.finer("run() JmDNS canceling " + records.size() + " records");
+            // announce the services, and the addresses of each interface
+            for (int h = 0; h < hosts.length; h++)
             {
-                logger.finer("run() JmDNS canceling service");
-                // announce the service
-                //long now = System.currentTimeMillis();
-                DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-                for (int i = 0; i < infos.length; i++)
+                final ResponseAssembler assembler = new ResponseAssembler(null, true);
+                for (int i = 0, n = records.size(); i < n; i++)
                 {
-                    ServiceInfoImpl info = infos[i];
-                    info.addAnswers(out, ttl, this.jmDNSImpl.getLocalHost());
-
-                    this.jmDNSImpl.getLocalHost().addAddressRecords(out, false);
+                    assembler.addAnswer((DNSRecord) records.get(i));
                 }
-                this.jmDNSImpl.send(out);
-            }
-            else
-            {
-                // After three successful announcements, we are finished.
-                synchronized (lock)
+                for (int i = 0, n = addressRecords[h].size(); i < n; i++)
                 {
-                    this.jmDNSImpl.setClosed(true);
-                    lock.notifyAll();
+                    assembler.addAnswer((DNSRecord) addressRecords[h].get(i));
+                }
+                final List messages = assembler.assemble();
+                for (int i = 0, n = messages.size(); i < n; i++)
+                {
+                    final DNSOutgoing out = (DNSOutgoing) messages.get(i);
+                    this.jmDNSImpl.send(out, hosts[h]);
+                    out.release();
                 }
-                this.cancel();
             }
         }
         catch (Throwable e)
@@ -113,5 +168,10 @@ public class Canceler extends TimerTask
             logger.log(Level.WARNING, "run() exception ", e);
             this.jmDNSImpl.recover();
         }
+        if (++count >= GOODBYES)
+        {
+            // After the last goodbye, we are finished.
+            this.cancel();
+        }
     }
-}
\ No newline at end of file
+}
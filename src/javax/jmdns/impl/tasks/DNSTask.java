@@ -0,0 +1,68 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl.tasks;
+
+import java.util.concurrent.Future;
+
+/**
+ * A task which is run by the TaskScheduler of a JmDNS instance, once or
+ * repeatedly, until it is canceled.
+ *
+ * @see TaskScheduler
+ */
+public abstract class DNSTask implements Runnable
+{
+    private volatile boolean canceled;
+
+    /**
+     * The pending execution of this task, if the scheduler uses futures.
+     */
+    private volatile Future future;
+
+    /**
+     * Cancels this task. A task which is running completes, but is not run
+     * again.
+     *
+     * @return false if the task was already canceled
+     */
+    public boolean cancel()
+    {
+        final boolean result = !canceled;
+        canceled = true;
+        final Future pending = future;
+        if (pending != null)
+        {
+            pending.cancel(false);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if this task changes the state of the host or of the
+     * services. The scheduler runs such tasks one at a time, in the order in
+     * which they are due.
+     */
+    public boolean isSerial()
+    {
+        return false;
+    }
+
+    /**
+     * Returns true if this task has been canceled.
+     */
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    void setFuture(Future future)
+    {
+        this.future = future;
+        // Canceled while it was being scheduled.
+        if (canceled)
+        {
+            future.cancel(false);
+        }
+    }
+}
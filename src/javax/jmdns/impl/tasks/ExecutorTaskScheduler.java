@@ -0,0 +1,227 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl.tasks;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default TaskScheduler, which runs the tasks on a small pool of
+ * threads.
+ * <p/>
+ * Unlike with a single java.util.Timer, a slow task does not hold up the
+ * responses, the queries and the maintenance of the cache. The tasks which
+ * change the state of the host and of the services, the Prober, Announcer,
+ * TextAnnouncer, Renewer, Canceler and the recovery, are run one at a time on
+ * a thread of their own, since they read the state, send their messages and
+ * advance the state in separate steps. (See DNSTask.isSerial().) A task which
+ * throws an exception neither stops the scheduler nor its own next runs. The
+ * scheduler measures how late the tasks start, which shows whether the pool
+ * is large enough.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public class ExecutorTaskScheduler implements TaskScheduler
+{
+    private static Logger logger = Logger.getLogger(ExecutorTaskScheduler.class.getName());
+
+    /**
+     * Number of threads running the tasks which are not serial, of the
+     * scheduler of a JmDNS instance.
+     */
+    public static int POOL_SIZE = 2;
+
+    /**
+     * Runs the tasks which are not serial.
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Runs the serial tasks, one at a time.
+     */
+    private final ScheduledThreadPoolExecutor serial;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private volatile long maxLatency;
+    private volatile long maxRunTime;
+
+    public ExecutorTaskScheduler()
+    {
+        this(POOL_SIZE);
+    }
+
+    /**
+     * @param poolSize number of threads running the tasks which are not
+     *                 serial
+     */
+    public ExecutorTaskScheduler(int poolSize)
+    {
+        executor = createExecutor(Math.max(1, poolSize), "JmDNS.Timer");
+        serial = createExecutor(1, "JmDNS.Timer.Serial");
+    }
+
+    private static ScheduledThreadPoolExecutor createExecutor(int poolSize, final String name)
+    {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                return new Thread(runnable, name);
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    private ScheduledThreadPoolExecutor getExecutor(DNSTask task)
+    {
+        return task.isSerial() ? serial : executor;
+    }
+
+    public void schedule(DNSTask task, long delay)
+    {
+        delay = Math.max(0, delay);
+        try
+        {
+            task.setFuture(getExecutor(task).schedule(new Run(task, delay, 0), delay, TimeUnit.MILLISECONDS));
+        }
+        catch (RejectedExecutionException e)
+        {
+            // shut down
+            task.cancel();
+        }
+    }
+
+    public void schedule(DNSTask task, long delay, long period)
+    {
+        delay = Math.max(0, delay);
+        try
+        {
+            task.setFuture(getExecutor(task).scheduleWithFixedDelay(new Run(task, delay, period), delay, period, TimeUnit.MILLISECONDS));
+        }
+        catch (RejectedExecutionException e)
+        {
+            // shut down
+            task.cancel();
+        }
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+        serial.shutdown();
+    }
+
+    /**
+     * Runs a task, and keeps track of its timing.
+     */
+    private final class Run implements Runnable
+    {
+        private final DNSTask task;
+        private final long period;
+        private long due;
+
+        Run(DNSTask task, long delay, long period)
+        {
+            this.task = task;
+            this.period = period;
+            this.due = System.currentTimeMillis() + delay;
+        }
+
+        public void run()
+        {
+            if (task.isCanceled())
+            {
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            final long latency = Math.max(0, start - due);
+            totalLatency.addAndGet(latency);
+            if (latency > maxLatency)
+            {
+                maxLatency = latency;
+            }
+            runs.incrementAndGet();
+            try
+            {
+                task.run();
+            }
+            catch (Throwable e)
+            {
+                failures.incrementAndGet();
+                logger.log(Level.WARNING, "run() exception ", e);
+            }
+            final long end = System.currentTimeMillis();
+            if (end - start > maxRunTime)
+            {
+                maxRunTime = end - start;
+            }
+            due = end + period;
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     */
+    public int getQueueSize()
+    {
+        return executor.getQueue().size() + serial.getQueue().size();
+    }
+
+    /**
+     * Returns the number of times a task was run.
+     */
+    public long getRunCount()
+    {
+        return runs.get();
+    }
+
+    /**
+     * Returns the number of times a task threw an exception.
+     */
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    /**
+     * Returns the average time in milliseconds between the time at which a
+     * task was due, and the time at which it started.
+     */
+    public long getAverageLatency()
+    {
+        final long count = runs.get();
+        return (count > 0) ? totalLatency.get() / count : 0;
+    }
+
+    /**
+     * Returns the longest time in milliseconds a task started late.
+     */
+    public long getMaxLatency()
+    {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the longest time in milliseconds a task took to run.
+     */
+    public long getMaxRunTime()
+    {
+        return maxRunTime;
+    }
+
+    public String toString()
+    {
+        return "ExecutorTaskScheduler[runs=" + getRunCount() + ",failures=" + getFailureCount() + ",queue=" + getQueueSize() + ",latency=" + getAverageLatency() + "/" + getMaxLatency() + ",maxRunTime=" + getMaxRunTime() + "]";
+    }
+}
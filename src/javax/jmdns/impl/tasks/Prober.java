@@ -4,11 +4,11 @@
 
 package javax.jmdns.impl.tasks;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,12 +17,14 @@ import javax.jmdns.impl.DNSOutgoing;
 import javax.jmdns.impl.DNSQuestion;
 import javax.jmdns.impl.DNSRecord;
 import javax.jmdns.impl.DNSState;
+import javax.jmdns.impl.HostInfo;
 import javax.jmdns.impl.JmDNSImpl;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The Prober sends three consecutive probes for all service infos
- * that needs probing as well as for the host name.
+ * that needs probing as well as for the host name. The probes are packed
+ * into as few messages as possible.
  * The state of each service info of the host name is advanced, when a probe has
  * been sent for it.
  * When the prober has run three times, it launches an Announcer.
@@ -31,7 +33,7 @@ import javax.jmdns.impl.ServiceInfoImpl;
  * host name) are taken away from the prober. This eventually causes the prober
  * tho cancel itself.
  */
-public class Prober extends TimerTask
+public class Prober extends DNSTask
 {
     static Logger logger = Logger.getLogger(Prober.class.getName());
 
@@ -67,7 +69,7 @@ public class Prober extends TimerTask
     }
 
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
         long now = System.currentTimeMillis();
         if (now - this.jmDNSImpl.getLastThrottleIncrement() < DNSConstants.PROBE_THROTTLE_COUNT_INTERVAL)
@@ -82,11 +84,11 @@ public class Prober extends TimerTask
 
         if (this.jmDNSImpl.getState() == DNSState.ANNOUNCED && this.jmDNSImpl.getThrottle() < DNSConstants.PROBE_THROTTLE_COUNT)
         {
-            timer.schedule(this, JmDNSImpl.getRandom().nextInt(1 + DNSConstants.PROBE_WAIT_INTERVAL), DNSConstants.PROBE_WAIT_INTERVAL);
+            scheduler.schedule(this, JmDNSImpl.getRandom().nextInt(1 + DNSConstants.PROBE_WAIT_INTERVAL), DNSConstants.PROBE_WAIT_INTERVAL);
         }
         else
         {
-            timer.schedule(this, DNSConstants.PROBE_CONFLICT_INTERVAL, DNSConstants.PROBE_CONFLICT_INTERVAL);
+            scheduler.schedule(this, DNSConstants.PROBE_CONFLICT_INTERVAL, DNSConstants.PROBE_CONFLICT_INTERVAL);
         }
     }
 
@@ -114,23 +116,29 @@ public class Prober extends TimerTask
         return super.cancel();
     }
 
+    public boolean isSerial()
+    {
+        return true;
+    }
+
     public void run()
     {
         synchronized (this.jmDNSImpl.getIoLock())
         {
-            DNSOutgoing out = null;
             try
             {
-                // send probes for JmDNS itself
-                if (this.jmDNSImpl.getState() == taskState && this.jmDNSImpl.getTask() == this)
-                {
-                    if (out == null)
-                    {
-                        out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                    }
-                    out.addQuestion(new DNSQuestion(this.jmDNSImpl.getLocalHost().getName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+                // The questions of the probes, and the records each of them
+                // proposes.
+                final List questions = new ArrayList();
+                final List proposals = new ArrayList();
 
-                    this.jmDNSImpl.getLocalHost().addAddressRecords(out, true);
+                // send probes for JmDNS itself, the records are those of
+                // the interface the probe is sent on
+                final boolean probeHost = this.jmDNSImpl.getState() == taskState && this.jmDNSImpl.getTask() == this;
+                if (probeHost)
+                {
+                    questions.add(new DNSQuestion(this.jmDNSImpl.getLocalHost().getName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
+                    proposals.add(null);
                     this.jmDNSImpl.advanceState();
                 }
                 // send probes for services
@@ -152,23 +160,43 @@ public class Prober extends TimerTask
                         {
                             info.advanceState();
                             logger.fine("run() JmDNS probing " + info.getQualifiedName() + " state " + info.getState());
-                            if (out == null)
-                            {
-                                out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                                out.addQuestion(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
-                            }
+                            questions.add(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_ANY, DNSConstants.CLASS_IN));
                             // the "unique" flag should be not set here because these answers haven't been proven unique yet
                             // this means the record will not exactly match the announcement record
-                            out.addAuthorativeAnswer(new DNSRecord.Service(info.getQualifiedName(), 
-                                    DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, 
-                                    info.getPriority(), info.getWeight(), info.getPort(), this.jmDNSImpl.getLocalHost().getName()));
+                            proposals.add(Collections.singletonList(new DNSRecord.Service(info.getQualifiedName(),
+                                    DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL,
+                                    info.getPriority(), info.getWeight(), info.getPort(), this.jmDNSImpl.getLocalHost().getName())));
                         }
                     }
                 }
-                if (out != null)
+                if (!questions.isEmpty())
                 {
                     logger.finer("run() JmDNS probing #" + taskState);
-                    this.jmDNSImpl.send(out);
+                    final HostInfo[] hosts = this.jmDNSImpl.getHosts();
+                    for (int h = 0; h < hosts.length; h++)
+                    {
+                        if (probeHost)
+                        {
+                            proposals.set(0, getAddressRecords(hosts[h]));
+                        }
+                        int start = 0;
+                        while (start < questions.size())
+                        {
+                            final DNSOutgoing out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_QUERY);
+                            final int end = writeProbes(out, questions, proposals, start, questions.size());
+                            if (end > start)
+                            {
+                                this.jmDNSImpl.send(out, hosts[h]);
+                                start = end;
+                            }
+                            else
+                            {
+                                logger.warning("run() probe too large for a message: " + questions.get(start));
+                                start++;
+                            }
+                            out.release();
+                        }
+                    }
                 }
                 else
                 {
@@ -194,4 +222,57 @@ public class Prober extends TimerTask
         }
     }
 
+    /**
+     * Returns the address records a host proposes in its probes.
+     */
+    private static List getAddressRecords(HostInfo host)
+    {
+        final List records = new ArrayList(2);
+        if (host.getDNS4AddressRecord() != null)
+        {
+            records.add(host.getDNS4AddressRecord());
+        }
+        if (host.getDNS6AddressRecord() != null)
+        {
+            records.add(host.getDNS6AddressRecord());
+        }
+        return records;
+    }
+
+    /**
+     * Writes as many probes as fit into a message, from a start index to a
+     * limit. All the questions come first, then the proposed records, so the
+     * message is written again with fewer probes if the records of a probe do
+     * not fit: without that probe, or with half of the probes if the records
+     * of the first one do not fit after the questions.
+     *
+     * @return the index of the first probe which was not written
+     */
+    private static int writeProbes(DNSOutgoing out, List questions, List proposals, int start, int limit)
+    {
+        int end = start;
+        while (end < limit && out.offerQuestion((DNSQuestion) questions.get(end)))
+        {
+            end++;
+        }
+        for (int i = start; i < end; i++)
+        {
+            final List records = (List) proposals.get(i);
+            for (int j = 0, n = records.size(); j < n; j++)
+            {
+                if (!out.offerAuthorativeAnswer((DNSRecord) records.get(j)))
+                {
+                    out.reset();
+                    final int fewer = (i > start) ? i : start + (end - start) / 2;
+                    if (fewer == start)
+                    {
+                        return start;
+                    }
+                    return writeProbes(out, questions, proposals, start, fewer);
+                }
+            }
+        }
+        return end;
+    }
+
 }
\ No newline at end of file
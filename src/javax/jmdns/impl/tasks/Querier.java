@@ -0,0 +1,187 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jmdns.impl.DNSCache;
+import javax.jmdns.impl.DNSConstants;
+import javax.jmdns.impl.DNSEntry;
+import javax.jmdns.impl.DNSIncoming;
+import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSQuestion;
+import javax.jmdns.impl.DNSRecord;
+import javax.jmdns.impl.DNSState;
+import javax.jmdns.impl.JmDNSImpl;
+
+/**
+ * Queries continuously for the PTR records of a name, until it is canceled.
+ * <p/>
+ * The first query is sent after 20-120 ms, the second one a second later,
+ * and then the interval doubles, up to an hour. (See Draft Cheshire chapter
+ * 5.2.) Each query carries the records of the cache which have more than
+ * half of their TTL left as known answers. (See Draft Cheshire chapter 7.1.)
+ * <p/>
+ * A query is not sent if another host has asked the same question since our
+ * last query, with all the known answers we would have sent. (See Draft
+ * Cheshire chapter 7.3.)
+ * <p/>
+ * Queries are only sent while JmDNS is in state ANNOUNCED.
+ */
+public abstract class Querier extends DNSTask
+{
+    static Logger logger = Logger.getLogger(Querier.class.getName());
+
+    protected final JmDNSImpl jmDNSImpl;
+    private final String name;
+    private TaskScheduler scheduler;
+
+    /**
+     * Milliseconds until the next query, zero before the first one.
+     */
+    private volatile long interval;
+
+    /**
+     * When our last query was sent, or skipped.
+     */
+    private volatile long lastQuery;
+
+    /**
+     * When another host last asked our question.
+     */
+    private volatile long duplicateQuestion;
+
+    /**
+     * @param name the name of the PTR records being queried for
+     */
+    protected Querier(JmDNSImpl jmDNSImpl, String name)
+    {
+        this.jmDNSImpl = jmDNSImpl;
+        this.name = name;
+    }
+
+    public void start(TaskScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+        scheduler.schedule(this, DNSConstants.RESPONSE_MIN_WAIT_INTERVAL + JmDNSImpl.getRandom().nextInt(DNSConstants.RESPONSE_MAX_WAIT_INTERVAL - DNSConstants.RESPONSE_MIN_WAIT_INTERVAL + 1));
+    }
+
+    /**
+     * Returns the name of the PTR records being queried for.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the milliseconds between the last query and the next one.
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    public void run()
+    {
+        long delay = DNSConstants.QUERY_WAIT_INTERVAL;
+        try
+        {
+            if (this.jmDNSImpl.getState() == DNSState.ANNOUNCED)
+            {
+                final long now = System.currentTimeMillis();
+                if (duplicateQuestion > lastQuery)
+                {
+                    logger.finer("run() JmDNS query answered for us " + name);
+                }
+                else
+                {
+                    logger.finer("run() JmDNS querying " + name);
+                    DNSOutgoing out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_QUERY);
+                    out.addQuestion(new DNSQuestion(name, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN));
+                    final List answers = getKnownAnswers(now);
+                    for (final Iterator i = answers.iterator(); i.hasNext();)
+                    {
+                        final DNSRecord answer = (DNSRecord) i.next();
+                        if (!out.offerAnswer(answer, now))
+                        {
+                            // The known answers which do not fit continue in
+                            // the next message. (See Draft Cheshire chapter 7.2.)
+                            out.setTruncated();
+                            this.jmDNSImpl.send(out);
+                            out.release();
+                            out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_QUERY);
+                            out.addAnswer(answer, now);
+                        }
+                    }
+                    this.jmDNSImpl.send(out);
+                    out.release();
+                }
+                lastQuery = now;
+                interval = (interval == 0) ? DNSConstants.QUERY_MIN_INTERVAL : Math.min(interval * 2, DNSConstants.QUERY_MAX_INTERVAL);
+                delay = interval;
+            }
+        }
+        catch (Throwable e)
+        {
+            logger.log(Level.WARNING, "run() exception ", e);
+            this.jmDNSImpl.recover();
+        }
+        if (!isCanceled())
+        {
+            scheduler.schedule(this, delay);
+        }
+    }
+
+    /**
+     * Tells this querier that another host has asked a question. If it is our
+     * question, asked for multicast answers and with all our known answers,
+     * our next query is not sent.
+     */
+    public void questionAsked(DNSIncoming in, DNSQuestion question)
+    {
+        if (question.getType() != DNSConstants.TYPE_PTR
+            || question.getClazz() != DNSConstants.CLASS_IN
+            || question.isUnique()
+            || !name.equalsIgnoreCase(question.getName()))
+        {
+            return;
+        }
+        final List answers = getKnownAnswers(System.currentTimeMillis());
+        for (final Iterator i = answers.iterator(); i.hasNext();)
+        {
+            if (!in.suppresses((DNSRecord) i.next()))
+            {
+                return;
+            }
+        }
+        duplicateQuestion = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the known answers of our query.
+     */
+    protected List getKnownAnswers(long now)
+    {
+        final List answers = new ArrayList();
+        final DNSCache cache = this.jmDNSImpl.getCache();
+        for (DNSCache.CacheNode n = cache.find(name); n != null; n = n.next())
+        {
+            final DNSEntry entry = n.getValue();
+            if (entry.getType() == DNSConstants.TYPE_PTR && entry.getClazz() == DNSConstants.CLASS_IN && entry.getName().equalsIgnoreCase(name))
+            {
+                final DNSRecord rec = (DNSRecord) entry;
+                if (!rec.isStale(now))
+                {
+                    answers.add(rec);
+                }
+            }
+        }
+        return answers;
+    }
+}
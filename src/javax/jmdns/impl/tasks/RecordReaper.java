@@ -4,14 +4,10 @@
 
 package javax.jmdns.impl.tasks;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
-import javax.jmdns.impl.DNSCache;
 import javax.jmdns.impl.DNSConstants;
 import javax.jmdns.impl.DNSRecord;
 import javax.jmdns.impl.DNSState;
@@ -19,8 +15,11 @@ import javax.jmdns.impl.JmDNSImpl;
 
 /**
  * Periodicaly removes expired entries from the cache.
+ * <p/>
+ * The cache keeps its records ordered by expiration time, so the reaper only
+ * visits the records which are actually due.
  */
-public class RecordReaper extends TimerTask
+public class RecordReaper extends DNSTask
 {
     static Logger logger = Logger.getLogger(RecordReaper.class.getName());
 
@@ -37,42 +36,35 @@ public class RecordReaper extends TimerTask
         this.jmDNSImpl = jmDNSImpl;
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, DNSConstants.RECORD_REAPER_INTERVAL, DNSConstants.RECORD_REAPER_INTERVAL);
+        scheduler.schedule(this, DNSConstants.RECORD_REAPER_INTERVAL, DNSConstants.RECORD_REAPER_INTERVAL);
     }
 
     public void run()
     {
-        synchronized (this.jmDNSImpl)
+        if (this.jmDNSImpl.getState() == DNSState.CANCELED)
         {
-            if (this.jmDNSImpl.getState() == DNSState.CANCELED)
-            {
-                return;
-            }
-            logger.finest("run() JmDNS reaping cache");
+            return;
+        }
+        logger.finest("run() JmDNS reaping cache");
 
-            // Remove expired answers from the cache
-            // -------------------------------------
-            // To prevent race conditions, we defensively copy all cache
-            // entries into a list.
-            List list = new ArrayList();
-            synchronized (this.jmDNSImpl.getCache())
-            {
-                for (Iterator i = this.jmDNSImpl.getCache().iterator(); i.hasNext();)
-                {
-                    for (DNSCache.CacheNode n = (DNSCache.CacheNode) i.next(); n != null; n = n.next())
-                    {
-                        list.add(n.getValue());
-                    }
-                }
-            }
-            // Now, we remove them.
-            long now = System.currentTimeMillis();
-            for (Iterator i = list.iterator(); i.hasNext();)
+        // Remove expired answers from the cache
+        // -------------------------------------
+        long now = System.currentTimeMillis();
+        final List expired = this.jmDNSImpl.getCache().expire(now);
+        if (expired.isEmpty())
+        {
+            return;
+        }
+        // A response may have refreshed or removed a record since, it is
+        // handled under the same lock.
+        synchronized (this.jmDNSImpl.getIoLock())
+        {
+            for (Iterator i = expired.iterator(); i.hasNext();)
             {
                 DNSRecord c = (DNSRecord) i.next();
-                if (c.isExpired(now))
+                if (this.jmDNSImpl.getCache().isExpired(c, now))
                 {
                     this.jmDNSImpl.updateRecord(now, c);
                     this.jmDNSImpl.getCache().remove(c);
@@ -80,4 +72,4 @@ public class RecordReaper extends TimerTask
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -7,21 +7,22 @@ package javax.jmdns.impl.tasks;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jmdns.impl.DNSConstants;
 import javax.jmdns.impl.DNSOutgoing;
+import javax.jmdns.impl.DNSRecord;
 import javax.jmdns.impl.DNSState;
+import javax.jmdns.impl.HostInfo;
 import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.ResponseAssembler;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The Renewer is there to send renewal announcment when the record expire for ours infos.
  */
-public class Renewer extends TimerTask
+public class Renewer extends DNSTask
 {
     static Logger logger = Logger.getLogger(Renewer.class.getName());
 
@@ -56,9 +57,9 @@ public class Renewer extends TimerTask
         }
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, DNSConstants.ANNOUNCED_RENEWAL_TTL_INTERVAL, DNSConstants.ANNOUNCED_RENEWAL_TTL_INTERVAL);
+        scheduler.schedule(this, DNSConstants.ANNOUNCED_RENEWAL_TTL_INTERVAL, DNSConstants.ANNOUNCED_RENEWAL_TTL_INTERVAL);
     }
 
     public boolean cancel()
@@ -85,19 +86,19 @@ public class Renewer extends TimerTask
         return super.cancel();
     }
 
+    public boolean isSerial()
+    {
+        return true;
+    }
+
     public void run()
     {
-        DNSOutgoing out = null;
         try
         {
             // send probes for JmDNS itself
-            if (this.jmDNSImpl.getState() == taskState)
+            final boolean renewHost = this.jmDNSImpl.getState() == taskState;
+            if (renewHost)
             {
-                if (out == null)
-                {
-                    out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-                }
-                this.jmDNSImpl.getLocalHost().addAddressRecords(out, false);
                 this.jmDNSImpl.advanceState();
             }
             // send announces for services
@@ -109,6 +110,7 @@ public class Renewer extends TimerTask
             {
                 list = new ArrayList(this.jmDNSImpl.getServices().values());
             }
+            final List renewed = new ArrayList();
             for (Iterator i = list.iterator(); i.hasNext();)
             {
                 ServiceInfoImpl info = (ServiceInfoImpl) i.next();
@@ -118,18 +120,45 @@ public class Renewer extends TimerTask
                     {
                         info.advanceState();
                         logger.finer("run() JmDNS announced " + info.getQualifiedName() + " state " + info.getState());
-                        if (out == null)
-                        {
-                            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
-                        }
-                        info.addAnswers(out, DNSConstants.DNS_TTL, this.jmDNSImpl.getLocalHost());
+                        renewed.add(info);
                     }
                 }
             }
-            if (out != null)
+            if (renewHost || !renewed.isEmpty())
             {
                 logger.finer("run() JmDNS announced");
-                this.jmDNSImpl.send(out);
+                // each interface is told its own addresses
+                final HostInfo[] hosts = this.jmDNSImpl.getHosts();
+                for (int h = 0; h < hosts.length; h++)
+                {
+                    final ResponseAssembler assembler = new ResponseAssembler(null, true);
+                    if (renewHost)
+                    {
+                        if (hosts[h].getDNS4AddressRecord() != null)
+                        {
+                            assembler.addAnswer(hosts[h].getDNS4AddressRecord());
+                        }
+                        if (hosts[h].getDNS6AddressRecord() != null)
+                        {
+                            assembler.addAnswer(hosts[h].getDNS6AddressRecord());
+                        }
+                    }
+                    for (int i = 0, n = renewed.size(); i < n; i++)
+                    {
+                        final List answers = ((ServiceInfoImpl) renewed.get(i)).getAnswers(hosts[h]);
+                        for (int j = 0, m = answers.size(); j < m; j++)
+                        {
+                            assembler.addAnswer((DNSRecord) answers.get(j));
+                        }
+                    }
+                    final List messages = assembler.assemble();
+                    for (int i = 0, n = messages.size(); i < n; i++)
+                    {
+                        final DNSOutgoing out = (DNSOutgoing) messages.get(i);
+                        this.jmDNSImpl.send(out, hosts[h]);
+                        out.release();
+                    }
+                }
             }
             else
             {
@@ -5,9 +5,10 @@
 package javax.jmdns.impl.tasks;
 
 import java.net.InetAddress;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.TimerTask;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,14 +19,16 @@ import javax.jmdns.impl.DNSOutgoing;
 import javax.jmdns.impl.DNSQuestion;
 import javax.jmdns.impl.DNSRecord;
 import javax.jmdns.impl.DNSState;
+import javax.jmdns.impl.HostInfo;
 import javax.jmdns.impl.JmDNSImpl;
+import javax.jmdns.impl.ResponseAssembler;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The Responder sends a single answer for the specified service infos
  * and for the host name.
  */
-public class Responder extends TimerTask
+public class Responder extends DNSTask
 {
     static Logger logger = Logger.getLogger(Responder.class.getName());
 
@@ -36,13 +39,19 @@ public class Responder extends TimerTask
     private DNSIncoming in;
     private InetAddress addr;
     private int port;
+    /**
+     * The host of the interface which received the query, whose addresses
+     * are given, and on which the response is sent.
+     */
+    private final HostInfo host;
 
-    public Responder(JmDNSImpl jmDNSImpl, DNSIncoming in, InetAddress addr, int port)
+    public Responder(JmDNSImpl jmDNSImpl, DNSIncoming in, InetAddress addr, int port, HostInfo host)
     {
         this.jmDNSImpl = jmDNSImpl;
         this.in = in;
         this.addr = addr;
         this.port = port;
+        this.host = host;
     }
 
     public void start()
@@ -69,8 +78,8 @@ public class Responder extends TimerTask
                     || q.getType() == DNSConstants.TYPE_TXT
                     || q.getType() == DNSConstants.TYPE_A
                     || q.getType() == DNSConstants.TYPE_AAAA
-                    || this.jmDNSImpl.getLocalHost().getName().equalsIgnoreCase(q.getName())
-                    || this.jmDNSImpl.getServices().containsKey(q.getName().toLowerCase()));
+                    || host.getName().equalsIgnoreCase(q.getName())
+                    || this.jmDNSImpl.getServices().containsKey(q.getKey()));
                 if (!iAmTheOnlyOne)
                 {
                     break;
@@ -95,10 +104,12 @@ public class Responder extends TimerTask
                 this.jmDNSImpl.setPlannedAnswer(null);
             }
 
-            // We use these sets to prevent duplicate records
-            // FIXME - This should be moved into DNSOutgoing
-            HashSet questions = new HashSet();
-            HashSet answers = new HashSet();
+            // We use these sets to prevent duplicate records, in the order
+            // in which they were added, so the records of a service stay
+            // together in the response.
+            Set questions = new LinkedHashSet();
+            Set answers = new LinkedHashSet();
+            Set additionals = new LinkedHashSet();
 
 
             if (this.jmDNSImpl.getState() == DNSState.ANNOUNCED)
@@ -126,15 +137,15 @@ public class Responder extends TimerTask
                             int type = q.getType();
                             if (type == DNSConstants.TYPE_ANY || type == DNSConstants.TYPE_SRV)
                             { // I ama not sure of why there is a special case here [PJYF Oct 15 2004]
-                                if (this.jmDNSImpl.getLocalHost().getName().equalsIgnoreCase(q.getName()))
+                                if (host.getName().equalsIgnoreCase(q.getName()))
                                 {
                                     // type = DNSConstants.TYPE_A;
-                                    DNSRecord answer = this.jmDNSImpl.getLocalHost().getDNS4AddressRecord();
+                                    DNSRecord answer = host.getDNS4AddressRecord();
                                     if (answer != null)
                                     {
                                         answers.add(answer);
                                     }
-                                    answer = this.jmDNSImpl.getLocalHost().getDNS6AddressRecord();
+                                    answer = host.getDNS6AddressRecord();
                                     if (answer != null)
                                     {
                                         answers.add(answer);
@@ -143,7 +154,7 @@ public class Responder extends TimerTask
                                 }
                                 else
                                 {
-                                    if (this.jmDNSImpl.getServiceTypes().containsKey(q.getName().toLowerCase()))
+                                    if (this.jmDNSImpl.getServiceTypes().containsKey(q.getKey()))
                                     {
                                         type = DNSConstants.TYPE_PTR;
                                     }
@@ -156,7 +167,7 @@ public class Responder extends TimerTask
                                     {
                                         // Answer a query for a domain name
                                         //out = addAnswer( in, addr, port, out, host );
-                                        DNSRecord answer = this.jmDNSImpl.getLocalHost().getDNS4AddressRecord();
+                                        DNSRecord answer = host.getDNS4AddressRecord();
                                         if (answer != null)
                                         {
                                             answers.add(answer);
@@ -166,7 +177,7 @@ public class Responder extends TimerTask
                                 case DNSConstants.TYPE_AAAA:
                                     {
                                         // Answer a query for a domain name
-                                        DNSRecord answer = this.jmDNSImpl.getLocalHost().getDNS6AddressRecord();
+                                        DNSRecord answer = host.getDNS6AddressRecord();
                                         if (answer != null)
                                         {
                                             answers.add(answer);
@@ -178,29 +189,14 @@ public class Responder extends TimerTask
                                         // Answer a query for services of a given type
 
                                         // find matching services
-                                        for (Iterator serviceIterator = this.jmDNSImpl.getServices().values().iterator(); serviceIterator.hasNext();)
+                                        ServiceInfoImpl[] infos = this.jmDNSImpl.getServices(q.getName());
+                                        for (int i = 0; i < infos.length; i++)
                                         {
-                                            ServiceInfoImpl info = (ServiceInfoImpl) serviceIterator.next();
+                                            ServiceInfoImpl info = infos[i];
                                             if (info.getState() == DNSState.ANNOUNCED)
                                             {
-                                                if (q.getName().equalsIgnoreCase(info.getType()))
-                                                {
-                                                    DNSRecord answer = this.jmDNSImpl.getLocalHost().getDNS4AddressRecord();
-                                                    if (answer != null)
-                                                    {
-                                                        answers.add(answer);
-                                                    }
-                                                    answer = this.jmDNSImpl.getLocalHost().getDNS6AddressRecord();
-                                                    if (answer != null)
-                                                    {
-                                                        answers.add(answer);
-                                                    }
-                                                    answers.add(new DNSRecord.Pointer(info.getType(), DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, info.getQualifiedName()));
-                                                    answers.add(new DNSRecord.Service(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN | DNSConstants.CLASS_UNIQUE, DNSConstants.DNS_TTL, 
-                                                            info.getPriority(), info.getWeight(), info.getPort(), this.jmDNSImpl.getLocalHost().getName()));
-                                                    answers.add(new DNSRecord.Text(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN | DNSConstants.CLASS_UNIQUE, DNSConstants.DNS_TTL, 
-                                                            info.getText()));
-                                                }
+                                                answers.addAll(info.getAnswers(host));
+                                                addAddressRecords(additionals);
                                             }
                                         }
                                         if (q.getName().equalsIgnoreCase("_services._mdns._udp.local."))
@@ -216,23 +212,11 @@ public class Responder extends TimerTask
                                 case DNSConstants.TYPE_ANY:
                                 case DNSConstants.TYPE_TXT:
                                     {
-                                        ServiceInfoImpl info = (ServiceInfoImpl) this.jmDNSImpl.getServices().get(q.getName().toLowerCase());
+                                        ServiceInfoImpl info = (ServiceInfoImpl) this.jmDNSImpl.getServices().get(q.getKey());
                                         if (info != null && info.getState() == DNSState.ANNOUNCED)
                                         {
-                                            DNSRecord answer = this.jmDNSImpl.getLocalHost().getDNS4AddressRecord();
-                                            if (answer != null)
-                                            {
-                                                answers.add(answer);
-                                            }
-                                            answer = this.jmDNSImpl.getLocalHost().getDNS6AddressRecord();
-                                            if (answer != null)
-                                            {
-                                                answers.add(answer);
-                                            }
-                                            answers.add(new DNSRecord.Pointer(info.getType(), DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, info.getQualifiedName()));
-                                            answers.add(new DNSRecord.Service(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN | DNSConstants.CLASS_UNIQUE, DNSConstants.DNS_TTL, 
-                                                    info.getPriority(), info.getWeight(), info.getPort(), this.jmDNSImpl.getLocalHost().getName()));
-                                            answers.add(new DNSRecord.Text(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN | DNSConstants.CLASS_UNIQUE, DNSConstants.DNS_TTL, info.getText()));
+                                            answers.addAll(info.getAnswers(host));
+                                            addAddressRecords(additionals);
                                         }
                                         break;
                                     }
@@ -246,37 +230,35 @@ public class Responder extends TimerTask
                     }
 
 
-                    // remove known answers, if the ttl is at least half of
-                    // the correct value. (See Draft Cheshire chapter 7.1.).
-                    for (Iterator i = in.getAnswers().iterator(); i.hasNext();)
+                    // the address records of the host are only additional
+                    // answers, unless they were asked for.
+                    additionals.removeAll(answers);
+
+                    // responde if we have answers, known answers are removed
+                    // by the assembler. (See Draft Cheshire chapter 7.1.).
+                    ResponseAssembler response = new ResponseAssembler(in, !isUnicast);
+                    for (Iterator i = questions.iterator(); i.hasNext();)
                     {
-                        DNSRecord knownAnswer = (DNSRecord) i.next();
-                        if (knownAnswer.getTtl() > DNSConstants.DNS_TTL / 2 && answers.remove(knownAnswer))
-                        {
-                            logger.log(Level.FINER, "JmDNS Responder Known Answer Removed");
-                        }
+                        response.addQuestion((DNSQuestion) i.next());
                     }
-
-
-                    // responde if we have answers
-                    if (answers.size() != 0)
+                    for (Iterator i = answers.iterator(); i.hasNext();)
+                    {
+                        response.addAnswer((DNSRecord) i.next());
+                    }
+                    for (Iterator i = additionals.iterator(); i.hasNext();)
+                    {
+                        response.addAdditionalAnswer((DNSRecord) i.next());
+                    }
+                    if (!response.isEmpty())
                     {
                         logger.finer("run() JmDNS responding");
-                        DNSOutgoing out = null;
-                        if (isUnicast)
-                        {
-                            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA, false);
-                        }
-
-                        for (Iterator i = questions.iterator(); i.hasNext();)
+                        List messages = response.assemble();
+                        for (int i = 0, n = messages.size(); i < n; i++)
                         {
-                            out.addQuestion((DNSQuestion) i.next());
+                            DNSOutgoing out = (DNSOutgoing) messages.get(i);
+                            this.jmDNSImpl.send(out, host);
+                            out.release();
                         }
-                        for (Iterator i = answers.iterator(); i.hasNext();)
-                        {
-                            out = this.jmDNSImpl.addAnswer(in, addr, port, out, (DNSRecord) i.next());
-                        }
-                        this.jmDNSImpl.send(out);
                     }
                     this.cancel();
                 }
@@ -288,4 +270,18 @@ public class Responder extends TimerTask
             }
         }
     }
-}
\ No newline at end of file
+
+    private void addAddressRecords(Set records)
+    {
+        DNSRecord answer = host.getDNS4AddressRecord();
+        if (answer != null)
+        {
+            records.add(answer);
+        }
+        answer = host.getDNS6AddressRecord();
+        if (answer != null)
+        {
+            records.add(answer);
+        }
+    }
+}
@@ -4,8 +4,6 @@
 
 package javax.jmdns.impl.tasks;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,13 +17,15 @@ import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
  * The ServiceInfoResolver queries up to three times consecutively for
- * a service info, and then removes itself from the timer.
+ * a service info, and then removes itself from the scheduler. The queries
+ * only ask for the records which are still missing, the first one is sent
+ * right away.
  * <p/>
  * The ServiceInfoResolver will run only if JmDNS is in state ANNOUNCED.
  * REMIND: Prevent having multiple service resolvers for the same info in the
- * timer queue.
+ * scheduler.
  */
-public class ServiceInfoResolver extends TimerTask
+public class ServiceInfoResolver extends DNSTask
 {
     static Logger logger = Logger.getLogger(ServiceInfoResolver.class.getName());
 
@@ -54,9 +54,10 @@ public class ServiceInfoResolver extends TimerTask
         this(jmDNSImpl, info, false);
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, DNSConstants.QUERY_WAIT_INTERVAL, DNSConstants.QUERY_WAIT_INTERVAL);
+        // The cache has been looked at already, the first query need not wait.
+        scheduler.schedule(this, 0, DNSConstants.QUERY_WAIT_INTERVAL);
     }
 
     public void run()
@@ -68,20 +69,37 @@ public class ServiceInfoResolver extends TimerTask
                 if (count++ < 3 && !info.hasData())
                 {
                     long now = System.currentTimeMillis();
-                    DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                    out.addQuestion(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN));
-                    out.addQuestion(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN));
-                    if (info.getServer() != null)
+                    DNSOutgoing out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_QUERY);
+                    // only ask for what is still missing
+                    boolean srv = info.getServer() == null;
+                    boolean txt = info.getTextBytes() == null;
+                    boolean a = !srv && info.getAddress() == null;
+                    if (srv)
+                    {
+                        out.addQuestion(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN));
+                    }
+                    if (txt)
+                    {
+                        out.addQuestion(new DNSQuestion(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN));
+                    }
+                    if (a)
                     {
                         out.addQuestion(new DNSQuestion(info.getServer(), DNSConstants.TYPE_A, DNSConstants.CLASS_IN));
                     }
-                    out.addAnswer((DNSRecord) this.jmDNSImpl.getCache().get(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN), now);
-                    out.addAnswer((DNSRecord) this.jmDNSImpl.getCache().get(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN), now);
-                    if (info.getServer() != null)
+                    if (srv)
+                    {
+                        out.addAnswer((DNSRecord) this.jmDNSImpl.getCache().get(info.getQualifiedName(), DNSConstants.TYPE_SRV, DNSConstants.CLASS_IN), now);
+                    }
+                    if (txt)
+                    {
+                        out.addAnswer((DNSRecord) this.jmDNSImpl.getCache().get(info.getQualifiedName(), DNSConstants.TYPE_TXT, DNSConstants.CLASS_IN), now);
+                    }
+                    if (a)
                     {
                         out.addAnswer((DNSRecord) this.jmDNSImpl.getCache().get(info.getServer(), DNSConstants.TYPE_A, DNSConstants.CLASS_IN), now);
                     }
                     this.jmDNSImpl.send(out);
+                    out.release();
                 }
                 else
                 {
@@ -4,98 +4,45 @@
 
 package javax.jmdns.impl.tasks;
 
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.List;
 
 import javax.jmdns.impl.DNSConstants;
-import javax.jmdns.impl.DNSOutgoing;
-import javax.jmdns.impl.DNSQuestion;
 import javax.jmdns.impl.DNSRecord;
-import javax.jmdns.impl.DNSState;
 import javax.jmdns.impl.JmDNSImpl;
 import javax.jmdns.impl.ServiceInfoImpl;
 
 /**
- * The ServiceResolver queries three times consecutively for services of
- * a given type, and then removes itself from the timer.
+ * The ServiceResolver queries continuously for services of a given type, as
+ * long as there are listeners for the type.
  * <p/>
- * The ServiceResolver will run only if JmDNS is in state ANNOUNCED.
- * REMIND: Prevent having multiple service resolvers for the same type in the
- * timer queue.
+ * There is one ServiceResolver per type, which JmDNS starts for the first
+ * listener of the type, and cancels when the last one is removed.
+ *
+ * @see Querier
  */
-public class ServiceResolver extends TimerTask
+public class ServiceResolver extends Querier
 {
-    static Logger logger = Logger.getLogger(ServiceResolver.class.getName());
-
-    /**
-     * 
-     */
-    private final JmDNSImpl jmDNSImpl;
-    /**
-     * Counts the number of queries being sent.
-     */
-    int count = 0;
-    private String type;
-
     public ServiceResolver(JmDNSImpl jmDNSImpl, String type)
     {
-        this.jmDNSImpl = jmDNSImpl;
-        this.type = type;
+        super(jmDNSImpl, type);
     }
 
-    public void start(Timer timer)
-    {
-        timer.schedule(this, DNSConstants.QUERY_WAIT_INTERVAL, DNSConstants.QUERY_WAIT_INTERVAL);
-    }
-
-    public void run()
+    /**
+     * Our own services of the type are known answers as well.
+     */
+    protected List getKnownAnswers(long now)
     {
-        try
+        final List answers = super.getKnownAnswers(now);
+        final ServiceInfoImpl[] infos = this.jmDNSImpl.getServices(getName());
+        for (int i = 0; i < infos.length; i++)
         {
-            if (this.jmDNSImpl.getState() == DNSState.ANNOUNCED)
+            final ServiceInfoImpl info = infos[i];
+            final DNSRecord answer = new DNSRecord.Pointer(info.getType(), DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, info.getQualifiedName());
+            if (!answers.contains(answer))
             {
-                if (count++ < 3)
-                {
-                    logger.finer("run() JmDNS querying service");
-                    long now = System.currentTimeMillis();
-                    DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                    out.addQuestion(new DNSQuestion(type, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN));
-                    for (Iterator s = this.jmDNSImpl.getServices().values().iterator(); s.hasNext();)
-                    {
-                        final ServiceInfoImpl info = (ServiceInfoImpl) s.next();
-                        try
-                        {
-                            out.addAnswer(new DNSRecord.Pointer(info.getType(), DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, info.getQualifiedName()), now);
-                        }
-                        catch (IOException ee)
-                        {
-                            break;
-                        }
-                    }
-                    this.jmDNSImpl.send(out);
-                }
-                else
-                {
-                    // After three queries, we can quit.
-                    this.cancel();
-                }
+                answers.add(answer);
             }
-            else
-            {
-                if (this.jmDNSImpl.getState() == DNSState.CANCELED)
-                {
-                    this.cancel();
-                }
-            }
-        }
-        catch (Throwable e)
-        {
-            logger.log(Level.WARNING, "run() exception ", e);
-            this.jmDNSImpl.recover();
         }
+        return answers;
     }
-}
\ No newline at end of file
+}
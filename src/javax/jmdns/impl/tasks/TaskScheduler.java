@@ -0,0 +1,32 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl.tasks;
+
+/**
+ * Runs the tasks of a JmDNS instance: the probes, announcements and
+ * responses it sends, the queries of its resolvers and the maintenance of its
+ * cache.
+ *
+ * @see ExecutorTaskScheduler
+ * @see VirtualTaskScheduler
+ */
+public interface TaskScheduler
+{
+    /**
+     * Runs a task once, after a delay in milliseconds.
+     */
+    void schedule(DNSTask task, long delay);
+
+    /**
+     * Runs a task repeatedly, first after a delay, and then with a period
+     * between the end of a run and the start of the next one, until the task
+     * is canceled.
+     */
+    void schedule(DNSTask task, long delay, long period);
+
+    /**
+     * Stops the scheduler. The tasks which are waiting are not run.
+     */
+    void shutdown();
+}
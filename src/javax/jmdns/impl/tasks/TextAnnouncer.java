@@ -6,8 +6,6 @@ package javax.jmdns.impl.tasks;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,7 +22,7 @@ import javax.jmdns.impl.ServiceInfoImpl;
  * <p/>
  * When the announcer has run two times, it finishes.
  */
-public class TextAnnouncer extends TimerTask
+public class TextAnnouncer extends DNSTask
 {
     static Logger logger = Logger.getLogger(TextAnnouncer.class.getName());
 
@@ -59,9 +57,9 @@ public class TextAnnouncer extends TimerTask
         }
     }
 
-    public void start(Timer timer)
+    public void start(TaskScheduler scheduler)
     {
-        timer.schedule(this, DNSConstants.ANNOUNCE_WAIT_INTERVAL, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
+        scheduler.schedule(this, DNSConstants.ANNOUNCE_WAIT_INTERVAL, DNSConstants.ANNOUNCE_WAIT_INTERVAL);
     }
 
     public boolean cancel()
@@ -88,6 +86,11 @@ public class TextAnnouncer extends TimerTask
         return super.cancel();
     }
 
+    public boolean isSerial()
+    {
+        return true;
+    }
+
     public void run()
     {
         DNSOutgoing out = null;
@@ -113,7 +116,7 @@ public class TextAnnouncer extends TimerTask
                         logger.finer("run() JmDNS announcing " + info.getQualifiedName() + " state " + info.getState());
                         if (out == null)
                         {
-                            out = new DNSOutgoing(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
+                            out = DNSOutgoing.obtain(DNSConstants.FLAGS_QR_RESPONSE | DNSConstants.FLAGS_AA);
                         }
                         info.addTextAnswer(out, DNSConstants.DNS_TTL);
                     }
@@ -123,6 +126,7 @@ public class TextAnnouncer extends TimerTask
             {
                 logger.finer("run() JmDNS announcing #" + taskState);
                 this.jmDNSImpl.send(out);
+                out.release();
             }
             else
             {
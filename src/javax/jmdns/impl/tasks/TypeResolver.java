@@ -4,89 +4,53 @@
 
 package javax.jmdns.impl.tasks;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.List;
 
 import javax.jmdns.impl.DNSConstants;
-import javax.jmdns.impl.DNSOutgoing;
-import javax.jmdns.impl.DNSQuestion;
 import javax.jmdns.impl.DNSRecord;
-import javax.jmdns.impl.DNSState;
 import javax.jmdns.impl.JmDNSImpl;
 
 /**
  * Helper class to resolve service types.
  * <p/>
- * The TypeResolver queries three times consecutively for service types, and then
- * removes itself from the timer.
- * <p/>
- * The TypeResolver will run only if JmDNS is in state ANNOUNCED.
+ * The TypeResolver queries continuously for service types, as long as there
+ * are service type listeners. There is one TypeResolver per JmDNS instance.
+ *
+ * @see Querier
  */
-public class TypeResolver extends TimerTask
+public class TypeResolver extends Querier
 {
-    static Logger logger = Logger.getLogger(TypeResolver.class.getName());
-
     /**
-     * 
+     * The name of the PTR records of the service types.
      */
-    private final JmDNSImpl jmDNSImpl;
+    public final static String SERVICE_TYPES = "_services._mdns._udp.local.";
 
     /**
      * @param jmDNSImpl
      */
     public TypeResolver(JmDNSImpl jmDNSImpl)
     {
-        this.jmDNSImpl = jmDNSImpl;
-    }
-
-    public void start(Timer timer)
-    {
-        timer.schedule(this, DNSConstants.QUERY_WAIT_INTERVAL, DNSConstants.QUERY_WAIT_INTERVAL);
+        super(jmDNSImpl, SERVICE_TYPES);
     }
 
     /**
-     * Counts the number of queries that were sent.
+     * Returns the cached service types and the service types known to this
+     * JmDNS instance, so that other hosts do not answer with them again.
      */
-    int count = 0;
-
-    public void run()
+    protected List getKnownAnswers(long now)
     {
-        try
+        final List answers = super.getKnownAnswers(now);
+        final List types = new ArrayList(this.jmDNSImpl.getServiceTypes().values());
+        for (final Iterator i = types.iterator(); i.hasNext();)
         {
-            if (this.jmDNSImpl.getState() == DNSState.ANNOUNCED)
-            {
-                if (count++ < 3)
-                {
-                    logger.finer("run() JmDNS querying type");
-                    DNSOutgoing out = new DNSOutgoing(DNSConstants.FLAGS_QR_QUERY);
-                    out.addQuestion(new DNSQuestion("_services._mdns._udp.local.", DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN));
-                    for (Iterator iterator = this.jmDNSImpl.getServiceTypes().values().iterator(); iterator.hasNext();)
-                    {
-                        out.addAnswer(new DNSRecord.Pointer("_services._mdns._udp.local.", DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, (String) iterator.next()), 0);
-                    }
-                    this.jmDNSImpl.send(out);
-                }
-                else
-                {
-                    // After three queries, we can quit.
-                    this.cancel();
-                }
-            }
-            else
+            final DNSRecord rec = new DNSRecord.Pointer(SERVICE_TYPES, DNSConstants.TYPE_PTR, DNSConstants.CLASS_IN, DNSConstants.DNS_TTL, (String) i.next());
+            if (!answers.contains(rec))
             {
-                if (this.jmDNSImpl.getState() == DNSState.CANCELED)
-                {
-                    this.cancel();
-                }
+                answers.add(rec);
             }
         }
-        catch (Throwable e)
-        {
-            logger.log(Level.WARNING, "run() exception ", e);
-            this.jmDNSImpl.recover();
-        }
+        return answers;
     }
-}
\ No newline at end of file
+}
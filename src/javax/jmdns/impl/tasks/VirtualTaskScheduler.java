@@ -0,0 +1,181 @@
+//Copyright 2026 JmDNS contributors
+//Licensed under Apache License version 2.0
+
+package javax.jmdns.impl.tasks;
+
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TaskScheduler with a virtual clock, for tests.
+ * <p/>
+ * Time only passes when advance() is called. The tasks which are due are then
+ * run on the calling thread, in the order of their due time, and in the order
+ * in which they were scheduled if they are due at the same time. A test can
+ * therefore step through the probes and announcements of a JmDNS instance
+ * without waiting, and always sees them in the same order.
+ * <p/>
+ * Only the tasks follow the virtual clock. The TTLs of the records, the
+ * expiry of the cache and the delays of the responses are still measured
+ * with System.currentTimeMillis(), so the records of the cache do not expire
+ * as the virtual clock advances.
+ *
+ * @version %I%, %G%
+ * @author	JmDNS contributors
+ */
+public class VirtualTaskScheduler implements TaskScheduler
+{
+    private static Logger logger = Logger.getLogger(VirtualTaskScheduler.class.getName());
+
+    /**
+     * Entries ordered by due time and sequence number.
+     */
+    private final TreeSet queue = new TreeSet();
+    private long now;
+    private long sequence;
+    private boolean shutdown;
+
+    public VirtualTaskScheduler()
+    {
+        this(0);
+    }
+
+    /**
+     * @param start
+     *      The initial time of the clock in milliseconds.
+     */
+    public VirtualTaskScheduler(long start)
+    {
+        this.now = start;
+    }
+
+    private final static class Entry implements Comparable
+    {
+        final DNSTask task;
+        final long due;
+        final long period;
+        final long sequence;
+
+        Entry(DNSTask task, long due, long period, long sequence)
+        {
+            this.task = task;
+            this.due = due;
+            this.period = period;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Object obj)
+        {
+            Entry other = (Entry) obj;
+            if (due != other.due)
+            {
+                return (due < other.due) ? -1 : 1;
+            }
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    public void schedule(DNSTask task, long delay)
+    {
+        schedule(task, delay, 0);
+    }
+
+    public synchronized void schedule(DNSTask task, long delay, long period)
+    {
+        if (shutdown)
+        {
+            task.cancel();
+            return;
+        }
+        queue.add(new Entry(task, now + Math.max(0, delay), period, sequence++));
+    }
+
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        queue.clear();
+    }
+
+    /**
+     * Returns the time of the virtual clock in milliseconds.
+     */
+    public synchronized long currentTimeMillis()
+    {
+        return now;
+    }
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     */
+    public synchronized int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Advances the clock, and runs the tasks which become due, including the
+     * tasks they schedule themselves.
+     *
+     * @param millis
+     *      The time to advance the clock by.
+     * @return the number of tasks which were run
+     */
+    public int advance(long millis)
+    {
+        final long target;
+        synchronized (this)
+        {
+            target = now + Math.max(0, millis);
+        }
+        int count = 0;
+        while (true)
+        {
+            Entry entry;
+            synchronized (this)
+            {
+                if (queue.isEmpty() || ((Entry) queue.first()).due > target)
+                {
+                    now = target;
+                    return count;
+                }
+                entry = (Entry) queue.first();
+                queue.remove(entry);
+                now = entry.due;
+            }
+            if (entry.task.isCanceled())
+            {
+                continue;
+            }
+            count++;
+            try
+            {
+                entry.task.run();
+            }
+            catch (Throwable e)
+            {
+                logger.log(Level.WARNING, "advance() exception ", e);
+            }
+            if (entry.period > 0 && !entry.task.isCanceled())
+            {
+                synchronized (this)
+                {
+                    if (!shutdown)
+                    {
+                        queue.add(new Entry(entry.task, now + entry.period, entry.period, sequence++));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks which are due now, without advancing the clock.
+     *
+     * @return the number of tasks which were run
+     */
+    public int runPending()
+    {
+        return advance(0);
+    }
+}